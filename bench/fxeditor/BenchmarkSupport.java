@@ -0,0 +1,80 @@
+package fxeditor;
+
+import javafx.application.Platform;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+class BenchmarkSupport {
+
+	private static final String[] WORDS = {
+		"the", "editor", "Editor", "text", "line", "of", "a", "file", "search", "replace",
+		"font", "window", "save", "load", "notepad", "JavaFX", "中文", "範例", "\tindent", "0x1F"
+	};
+
+	private static boolean toolkitStarted;
+
+	// A text of the given length made of words and lines of varying width. The same length
+	// always gives the same text, so the runs can be compared.
+	static String generateText(int length) {
+		Random random = new Random(length);
+		StringBuilder text = new StringBuilder(length + 16);
+		int lineLength = 0;
+		int lineWidth = 40 + random.nextInt(80);
+		while (text.length() < length) {
+			if (lineLength > lineWidth) {
+				text.append('\n');
+				lineLength = 0;
+				lineWidth = 40 + random.nextInt(80);
+			} else {
+				String word = WORDS[random.nextInt(WORDS.length)];
+				text.append(word).append(' ');
+				lineLength += word.length() + 1;
+			}
+		}
+		text.setLength(length);
+		return text.toString();
+	}
+
+	// A temporary file of the given size made of the same words and lines, written a line at
+	// a time, so it can be larger than a string can hold. The last line is padded with spaces.
+	static File generateFile(long size, Charset charset) throws IOException {
+		File file = File.createTempFile("fxeditor-bench", ".txt");
+		Random random = new Random(size);
+		StringBuilder line = new StringBuilder();
+		long written = 0;
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
+			while (true) {
+				line.setLength(0);
+				int lineWidth = 40 + random.nextInt(80);
+				while (line.length() <= lineWidth) {
+					line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+				}
+				line.append('\n');
+
+				byte[] bytes = line.toString().getBytes(charset);
+				if (written + bytes.length > size) {
+					break;
+				}
+				out.write(bytes);
+				written += bytes.length;
+			}
+
+			for (; written < size; written++) {
+				out.write(' ');
+			}
+		}
+
+		return file;
+	}
+
+	// Start JavaFX once per JVM, the bench target runs it on the headless Monocle platform
+	static synchronized void startToolkit() {
+		if (!toolkitStarted) {
+			Platform.startup(() -> {});
+			toolkitStarted = true;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package fxeditor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileBenchmark {
+
+	// Larger files are opened in the large file viewer, see LargeFileBenchmark
+	@Param({"1024", "1048576", "67108864"})
+	private int size;
+
+	@Param({"UTF-8", "Big5"})
+	private String charset;
+
+	private File source, target;
+	private PieceTable document;
+	private FileEncoding encoding;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkSupport.startToolkit();
+		String text = BenchmarkSupport.generateText(size);
+		document = new PieceTable(text);
+		encoding = new FileEncoding(Charset.forName(charset), false);
+
+		source = File.createTempFile("fxeditor-bench", ".txt");
+		target = File.createTempFile("fxeditor-bench", ".txt");
+		Files.write(source.toPath(), text.getBytes(encoding.getCharset()));
+	}
+
+	@TearDown
+	public void tearDown() {
+		source.delete();
+		target.delete();
+	}
+
+	// Decode the file and hand the text over to the FX thread, as opening a file does
+	@Benchmark
+	public long loadFile() throws Exception {
+		AtomicLong length = new AtomicLong();
+		FileLoader loader = new FileLoader(source, encoding, chunk -> length.addAndGet(chunk.length()));
+		loader.call();
+		return length.get();
+	}
+
+	// Encode the text into a temporary file and move it over the target, as saving does
+	@Benchmark
+	public File saveFile() throws Exception {
+		new FileSaver(target, document, encoding, LineEnding.CRLF).call();
+		return target;
+	}
+}
@@ -0,0 +1,29 @@
+package fxeditor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FontCatalogBenchmark {
+
+	private FontCatalog fontCatalog;
+
+	@Setup
+	public void setUp() {
+		BenchmarkSupport.startToolkit();
+		fontCatalog = new FontCatalog();
+	}
+
+	// Walk every installed font, as the font chooser does when its cache is out of date
+	@Benchmark
+	public Map<String, Set<String>> createFontFamilyStyleMap() {
+		return fontCatalog.createFontFamilyStyleMap();
+	}
+}
@@ -0,0 +1,70 @@
+package fxeditor;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.concurrent.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LargeFileBenchmark {
+
+	// The files the editor opens in the large file viewer, they are generated on disk since
+	// the larger ones don't fit in a string
+	@Param({"67108864", "1073741824"})
+	private long size;
+
+	@Param({"UTF-8", "Big5"})
+	private String charset;
+
+	@Param({"true", "false"})
+	private boolean isCaseSensitive;
+
+	private File file;
+	private LargeFileViewer viewer;
+
+	@Setup
+	public void setUp() throws Exception {
+		BenchmarkSupport.startToolkit();
+		file = BenchmarkSupport.generateFile(size, Charset.forName(charset));
+
+		// Searching covers the lines indexed, which are published on the FX thread
+		viewer = new LargeFileViewer(file, Charset.forName(charset));
+		viewer.createIndexer().run();
+		CountDownLatch published = new CountDownLatch(1);
+		Platform.runLater(published::countDown);
+		published.await();
+	}
+
+	@TearDown
+	public void tearDown() {
+		viewer.close();
+		file.delete();
+	}
+
+	// Index the lines of the whole file, as when a large file is opened
+	@Benchmark
+	public LargeFileViewer index() throws Exception {
+		LargeFileViewer viewer = new LargeFileViewer(file, Charset.forName(charset));
+		Task<Void> indexer = viewer.createIndexer();
+		indexer.run();
+		indexer.get();
+		viewer.close();
+		return viewer;
+	}
+
+	// Search the whole file for a word it doesn't have, as find next does when there is no match
+	@Benchmark
+	public boolean findNext() throws Exception {
+		Task<Boolean> finder = viewer.createFinder("notepad!", Direction.DOWN, isCaseSensitive);
+		finder.run();
+		return finder.get();
+	}
+}
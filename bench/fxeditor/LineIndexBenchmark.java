@@ -0,0 +1,64 @@
+package fxeditor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineIndexBenchmark {
+
+	// Larger files are opened in the large file viewer, see LargeFileBenchmark
+	@Param({"1024", "1048576", "67108864"})
+	private int size;
+
+	private String text;
+	private LineIndex lineIndex = new LineIndex();
+	private int[] offsets = new int[1024];
+
+	@Setup
+	public void setUp() {
+		text = BenchmarkSupport.generateText(size);
+		lineIndex.reset(text);
+
+		Random random = new Random(size);
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = random.nextInt(size);
+		}
+	}
+
+	// Index the lines of the whole text, as when a file is opened
+	@Benchmark
+	public int reset() {
+		lineIndex.reset(text);
+		return lineIndex.getLineCount();
+	}
+
+	// Find the line and its start for the caret, as the status bar and go-to-line do
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public int lineOfOffset() {
+		int sum = 0;
+		for (int offset : offsets) {
+			sum += lineIndex.getLineStart(lineIndex.getLineOfOffset(offset));
+		}
+		return sum;
+	}
+
+	// Type a line break at one place and then at another, the index moves its gap between them
+	@Benchmark
+	public int edit() {
+		int first = offsets[0];
+		int second = offsets[1];
+		lineIndex.textChanged(first, first, "\n");
+		lineIndex.textChanged(second, second, "\n");
+		lineIndex.textChanged(second, second + 1, "");
+		lineIndex.textChanged(first, first + 1, "");
+		return lineIndex.getLineCount();
+	}
+}
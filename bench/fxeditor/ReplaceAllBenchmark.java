@@ -0,0 +1,57 @@
+package fxeditor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplaceAllBenchmark {
+
+	// Larger files are opened in the large file viewer, which can't replace
+	@Param({"1024", "1048576", "67108864"})
+	private int size;
+
+	@Param({"true", "false"})
+	private boolean isCaseSensitive;
+
+	private String text;
+	private EditorTextArea editor;
+	private TextSearcher searcher;
+	private RegexSearcher regexSearcher;
+
+	@Setup
+	public void setUp() {
+		BenchmarkSupport.startToolkit();
+		text = BenchmarkSupport.generateText(size);
+		editor = new EditorTextArea();
+		searcher = new TextSearcher("editor", isCaseSensitive);
+		regexSearcher = new RegexSearcher("edit(or)", isCaseSensitive);
+	}
+
+	@Setup(Level.Invocation)
+	public void load() {
+		editor.load(text);
+	}
+
+	// Replace every match as one edit through the code FindReplaceDialog runs, including the
+	// listeners and the undo history of the text area
+	@Benchmark
+	public int replaceAll() {
+		Replacements replacements = searcher.findReplacements(editor.getDocument(), "writer");
+		editor.replaceAll(replacements);
+		return replacements.size();
+	}
+
+	// The same with a regular expression, expanding a group reference for every match
+	@Benchmark
+	public int replaceAllMatches() {
+		Replacements replacements = regexSearcher.findReplacements(editor.getDocument(), "writ$1");
+		editor.replaceAll(replacements);
+		return replacements.size();
+	}
+}
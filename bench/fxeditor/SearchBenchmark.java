@@ -0,0 +1,62 @@
+package fxeditor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+	// Larger files are opened in the large file viewer, see LargeFileBenchmark
+	@Param({"1024", "1048576", "67108864"})
+	private int size;
+
+	@Param({"true", "false"})
+	private boolean isCaseSensitive;
+
+	private PieceTable document;
+	private TextSearcher searcher;
+	private RegexSearcher regexSearcher;
+
+	@Setup
+	public void setUp() {
+		document = new PieceTable(BenchmarkSupport.generateText(size));
+		searcher = new TextSearcher("editor", isCaseSensitive);
+		regexSearcher = new RegexSearcher("edit\\w*", isCaseSensitive);
+	}
+
+	// Find every match from the top, as pressing find next over and over does
+	@Benchmark
+	public int findNext() {
+		int count = 0;
+		int index = searcher.indexOf(document, 0);
+		while (index != -1) {
+			count++;
+			index = searcher.indexOf(document, index + searcher.getLength());
+		}
+		return count;
+	}
+
+	// The same with a regular expression
+	@Benchmark
+	public int findNextMatch() {
+		int count = 0;
+		boolean found = regexSearcher.find(document, 0);
+		while (found) {
+			count++;
+			found = regexSearcher.findNext();
+		}
+		return count;
+	}
+
+	// Find backwards from the end to the previous match
+	@Benchmark
+	public int findPrevious() {
+		return searcher.lastIndexOf(document, document.length());
+	}
+}
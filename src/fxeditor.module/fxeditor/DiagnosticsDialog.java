@@ -0,0 +1,97 @@
+package fxeditor;
+
+import javafx.geometry.*;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.*;
+import javafx.scene.text.Font;
+import javafx.stage.*;
+
+import java.io.*;
+
+public class DiagnosticsDialog {
+
+	private Stage owner, stage;
+	private Scene scene;
+
+	private VBox root;
+	private HBox buttonContainer;
+
+	private TextArea report;
+	private Button refresh, save, clear, close;
+
+	public DiagnosticsDialog(Stage owner) {
+		this.owner = owner;
+
+		report = new TextArea();
+		report.setEditable(false);
+		report.setFont(Font.font("Monospaced", 12));
+		VBox.setVgrow(report, Priority.ALWAYS);
+
+		refresh = new Button("重新整理(_R)");
+		refresh.setOnAction(e -> refresh());
+
+		save = new Button("儲存(_S)...");
+		save.setOnAction(e -> save());
+
+		clear = new Button("清除(_C)");
+		clear.setOnAction(e -> {
+			Instrumentation.clear();
+			refresh();
+		});
+
+		close = new Button("關閉");
+		close.setCancelButton(true);
+		close.setOnAction(e -> stage.close());
+
+		buttonContainer = new HBox(10, refresh, save, clear, close);
+		buttonContainer.setAlignment(Pos.CENTER_RIGHT);
+
+		root = new VBox(10, report, buttonContainer);
+		root.setPadding(new Insets(10));
+
+		scene = new Scene(root, 900, 500);
+
+		stage = new Stage();
+		stage.initOwner(owner);
+		stage.initStyle(StageStyle.UTILITY);
+		stage.setTitle("診斷資訊");
+		stage.setScene(scene);
+		stage.setOnShown(e -> {
+			stage.setX(owner.getX() + owner.getWidth() / 2 - stage.getWidth() / 2);
+			stage.setY(owner.getY() + owner.getHeight() / 2 - stage.getHeight() / 2);
+		});
+	}
+
+	public void show() {
+		refresh();
+		stage.show();
+		stage.toFront();
+	}
+
+	private void refresh() {
+		report.setText(Instrumentation.report());
+	}
+
+	private void save() {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("儲存診斷資訊");
+		fileChooser.setInitialFileName("fxeditor-diagnostics.txt");
+		File file = fileChooser.showSaveDialog(stage);
+		if (file == null) {
+			return;
+		}
+
+		try {
+			Instrumentation.dump(file);
+		} catch(IOException e) {
+			Alert alert = new Alert(Alert.AlertType.ERROR);
+			alert.initOwner(stage);
+			alert.initStyle(StageStyle.UTILITY);
+			alert.setTitle("檔案錯誤");
+			alert.setHeaderText(null);
+			alert.setContentText("無法儲存 " + file.getName());
+			alert.show();
+		}
+	}
+}
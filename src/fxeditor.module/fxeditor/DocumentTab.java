@@ -0,0 +1,270 @@
+package fxeditor;
+
+import javafx.beans.property.*;
+import javafx.concurrent.Task;
+import javafx.scene.control.Tab;
+import javafx.scene.layout.Region;
+
+import java.io.File;
+
+public class DocumentTab extends Tab {
+
+	// The approximate memory of a character and a line of the loaded text. The document
+	// mirrors the text area's content, so the characters are held twice.
+	private static final int BYTES_PER_CHAR = 4;
+	private static final int BYTES_PER_LINE = 64;
+
+	private EditorTextArea editor;
+	private LineIndex lineIndex = new LineIndex();
+	private WrapIndex wrapIndex;
+	private EditJournal journal;
+	private Region content;
+	private DoubleProperty wrappingWidth = new SimpleDoubleProperty(this, "wrappingWidth");
+
+	private File file;
+	private FileEncoding encoding = FileEncoding.DEFAULT;
+	private LineEnding lineEnding = LineEnding.getDefault();
+	private FileLoader fileLoader;
+	private FileSaver fileSaver;
+	private Task<Void> fileFollower;
+	private LargeFileViewer largeFileViewer;
+	private boolean follow;
+	private boolean lossy;
+
+	// When the tab was last selected or left, and where the caret was when the text was
+	// dropped, -1 while the text is loaded
+	private long lastUsed = System.currentTimeMillis();
+	private int unloadedCaret = -1;
+
+	public DocumentTab() {
+		this(-1);
+	}
+
+	// The unsaved edits are recorded in the given journal slot, or the first free one if -1
+	public DocumentTab(int journalSlot) {
+		editor = new EditorTextArea();
+		editor.addTextChangeListener("lineIndex", lineIndex);
+
+		// Keep track of the rows of the wrapped text, after the lines are up to date
+		wrapIndex = new WrapIndex(editor, lineIndex);
+		wrapIndex.setFont(editor.getFont());
+		editor.fontProperty().addListener((obs, oldValue, newValue) -> wrapIndex.setFont(newValue));
+		editor.addTextChangeListener("wrapIndex", wrapIndex);
+
+		// Record the unsaved edits, so they survive a crash
+		journal = new EditJournal(editor, () -> file, journalSlot);
+		editor.addTextChangeListener("journal", journal);
+
+		// Mark the tab while the text is modified
+		editor.addTextChangeListener("tabText", (start, end, text) -> updateText());
+
+		// The text wraps at the width inside the padding of the text area's content, which
+		// only exists once the text area is laid out
+		editor.widthProperty().addListener(obs -> {
+			if (content == null) {
+				content = (Region) editor.lookup(".content");
+				if (content != null) {
+					content.widthProperty().addListener(o -> updateWrappingWidth());
+					updateWrappingWidth();
+				}
+			}
+		});
+		wrappingWidth.addListener((obs, oldValue, newValue) -> wrapIndex.setWrappingWidth(newValue.doubleValue()));
+
+		setContent(editor);
+		updateText();
+	}
+
+	public EditorTextArea getEditor() {
+		return editor;
+	}
+
+	public LineIndex getLineIndex() {
+		return lineIndex;
+	}
+
+	public WrapIndex getWrapIndex() {
+		return wrapIndex;
+	}
+
+	public EditJournal getJournal() {
+		return journal;
+	}
+
+	public ReadOnlyDoubleProperty wrappingWidthProperty() {
+		return wrappingWidth;
+	}
+
+	public void setWrapText(boolean wrapText) {
+		wrapIndex.setEnabled(wrapText);
+		editor.setWrapText(wrapText);
+	}
+
+	// The file the text is saved to, null if it hasn't been saved
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) {
+		this.file = file;
+		updateText();
+	}
+
+	public FileEncoding getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(FileEncoding encoding) {
+		this.encoding = encoding;
+	}
+
+	public LineEnding getLineEnding() {
+		return lineEnding;
+	}
+
+	public void setLineEnding(LineEnding lineEnding) {
+		this.lineEnding = lineEnding;
+	}
+
+	public FileLoader getFileLoader() {
+		return fileLoader;
+	}
+
+	public void setFileLoader(FileLoader fileLoader) {
+		this.fileLoader = fileLoader;
+		updateEditable();
+		updateText();
+	}
+
+	public FileSaver getFileSaver() {
+		return fileSaver;
+	}
+
+	public void setFileSaver(FileSaver fileSaver) {
+		this.fileSaver = fileSaver;
+		updateText();
+	}
+
+	public Task<Void> getFileFollower() {
+		return fileFollower;
+	}
+
+	public void setFileFollower(Task<Void> fileFollower) {
+		// The text appended keeps its replacement characters once the file is no longer followed
+		if (this.fileFollower instanceof FileFollower && ((FileFollower) this.fileFollower).getReplacementCount() > 0) {
+			lossy = true;
+		}
+		this.fileFollower = fileFollower;
+		updateEditable();
+	}
+
+	// Whether the file had bytes which couldn't be decoded with the encoding, the text has
+	// replacement characters instead of them and saving it would lose the bytes
+	public boolean isLossy() {
+		return lossy || (fileFollower instanceof FileFollower && ((FileFollower) fileFollower).getReplacementCount() > 0);
+	}
+
+	public void setLossy(boolean lossy) {
+		this.lossy = lossy;
+	}
+
+	// Whether the file is to be followed, even before it is loaded
+	public boolean isFollow() {
+		return follow;
+	}
+
+	public void setFollow(boolean follow) {
+		this.follow = follow;
+	}
+
+	public LargeFileViewer getLargeFileViewer() {
+		return largeFileViewer;
+	}
+
+	// The large file is only viewed, the text area is kept empty meanwhile
+	public void setLargeFileViewer(LargeFileViewer largeFileViewer) {
+		this.largeFileViewer = largeFileViewer;
+		setContent((largeFileViewer != null) ? largeFileViewer : editor);
+		updateText();
+	}
+
+	// The editor can't be modified while a file is loading
+	public boolean isModified() {
+		return fileLoader == null && editor.isModified();
+	}
+
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	public void markUsed() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	// An estimate of the heap the text takes, the large file viewer maps the file instead
+	public long getMemoryUsage() {
+		return (long) editor.getLength() * BYTES_PER_CHAR + (long) lineIndex.getLineCount() * BYTES_PER_LINE
+			+ editor.getUndoManager().getMemoryUsed();
+	}
+
+	public boolean isUnloaded() {
+		return unloadedCaret != -1;
+	}
+
+	// The text can be dropped when it can be loaded again the same from the file
+	public boolean canUnload() {
+		return !isUnloaded() && file != null && editor.getLength() > 0 && !editor.isModified()
+			&& fileLoader == null && fileSaver == null && fileFollower == null && largeFileViewer == null;
+	}
+
+	// Drop the text, it is loaded from the file again once the tab is selected. The undo
+	// history goes with it.
+	public void unload() {
+		unloadedCaret = editor.getCaretPosition();
+		editor.load("");
+	}
+
+	// The caret position before the text was dropped, the tab counts as loaded again
+	public int takeUnloadedCaret() {
+		int caret = unloadedCaret;
+		unloadedCaret = -1;
+		return caret;
+	}
+
+	// Show the name of the file, marked while the text is modified
+	public void updateText() {
+		String name;
+		if (file != null) {
+			name = file.getName();
+		} else if (largeFileViewer != null) {
+			name = largeFileViewer.getFile().getName();
+		} else {
+			name = "未命名";
+		}
+		setText(isModified() ? "*" + name : name);
+	}
+
+	// Release the file and the journal once the tab is closed
+	public void close() {
+		if (fileLoader != null) {
+			fileLoader.cancel();
+		}
+		if (fileFollower != null) {
+			fileFollower.cancel();
+		}
+		if (largeFileViewer != null) {
+			largeFileViewer.close();
+		}
+		journal.close();
+	}
+
+	// The text is only viewed while it is loading or followed, an edit of the followed text
+	// would be lost once the file is loaded again
+	private void updateEditable() {
+		editor.setEditable(fileLoader == null && fileFollower == null);
+	}
+
+	private void updateWrappingWidth() {
+		wrappingWidth.set(content.getWidth() - content.snappedLeftInset() - content.snappedRightInset());
+	}
+}
@@ -0,0 +1,452 @@
+package fxeditor;
+
+import javafx.application.Platform;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+public class EditJournal implements TextChangeListener {
+
+	private static final int MAGIC = 0x46584a4c;
+	private static final long FLUSH_INTERVAL = 1000;
+	private static final long COMPACTION_INTERVAL = 5 * 60 * 1000;
+	private static final int MAX_JOURNAL_LENGTH = 4 * 1024 * 1024;
+	private static final int MAX_RECORD_LENGTH = 64 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Every open document has a journal of its own, told apart by a slot number
+	private static final int MAX_SLOTS = 64;
+
+	private EditorTextArea editor;
+	private Supplier<File> file;
+	private File journalFile, snapshotFile;
+	private FileLock lock;
+	private int slot = -1;
+
+	// Told on the FX thread when the journal can't be read or written, the unsaved changes
+	// may not survive a crash then
+	private Consumer<IOException> onError;
+	private IOException lockError;
+
+	// The operations are written in batches by a single background thread, in the order
+	// they were made. Only the FX thread adds operations.
+	private ScheduledExecutorService writer;
+	private List<Operation> pending = new ArrayList<>();
+
+	// Whether the journal holds unsaved changes, and how much was appended since the last snapshot
+	private boolean active;
+	private long journalLength;
+	private long lastCompaction;
+
+	// Only used by the writer thread
+	private long epoch;
+	private boolean failing;
+	private DataOutputStream out;
+	private FileOutputStream fileOut;
+	private char[] chars = new char[BUFFER_SIZE];
+	private byte[] bytes = new byte[BUFFER_SIZE * 2];
+
+	public EditJournal(EditorTextArea editor, Supplier<File> file) {
+		this(editor, file, -1);
+	}
+
+	// Use the given slot, or the first one free if it is -1
+	public EditJournal(EditorTextArea editor, Supplier<File> file, int slot) {
+		this.editor = editor;
+		this.file = file;
+
+		File directory = getDirectory();
+		directory.mkdirs();
+
+		// Other journals own the slots, this one goes without
+		int first = (slot == -1) ? 0 : slot;
+		int last = (slot == -1) ? MAX_SLOTS - 1 : slot;
+		for (int i = first; i <= last && lock == null; i++) {
+			try {
+				lock = tryLock(directory, i);
+				if (lock != null) {
+					this.slot = i;
+				}
+			} catch(IOException e) {
+				lockError = e;
+				break;
+			}
+		}
+		if (lock == null) {
+			return;
+		}
+
+		journalFile = new File(directory, getName(this.slot));
+		snapshotFile = new File(directory, getName(this.slot) + ".snapshot");
+
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "EditJournal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	// The slots holding a snapshot, the text of an editor which didn't exit normally unless
+	// another running editor owns the slot
+	public static List<Integer> getSnapshotSlots() {
+		List<Integer> slots = new ArrayList<>();
+		String[] names = getDirectory().list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.equals("journal.snapshot")) {
+					slots.add(0);
+				} else if (name.matches("journal-[0-9]{1,9}\\.snapshot")) {
+					slots.add(Integer.parseInt(name.substring(8, name.length() - 9)));
+				}
+			}
+		}
+		Collections.sort(slots);
+		return slots;
+	}
+
+	// The slot of the journal, -1 if it has none
+	public int getSlot() {
+		return slot;
+	}
+
+	public void setOnError(Consumer<IOException> onError) {
+		this.onError = onError;
+		if (lockError != null) {
+			reportError(lockError);
+		}
+	}
+
+	@Override
+	public void textChanged(int start, int end, String text) {
+		if (writer == null) {
+			return;
+		}
+
+		if (!editor.isModified()) {
+			if (active) {
+				clear();
+			}
+			return;
+		}
+
+		// Large changes, such as replacing the whole text, are cheaper as a snapshot
+		if (!active || text.length() > MAX_RECORD_LENGTH || journalLength > MAX_JOURNAL_LENGTH
+				|| System.currentTimeMillis() - lastCompaction > COMPACTION_INTERVAL) {
+			compact();
+			return;
+		}
+
+		journalLength += text.length() + 12;
+		add(new Operation(start, end, text));
+	}
+
+	// Called once the text has been saved, the journal is only kept for changes made since
+	public void savePointChanged() {
+		if (writer == null || !active) {
+			return;
+		}
+
+		if (editor.isModified()) {
+			compact();
+		} else {
+			clear();
+		}
+	}
+
+	// Forget the unsaved changes, they have been discarded on purpose
+	public void clear() {
+		if (writer == null) {
+			return;
+		}
+
+		active = false;
+		add(new Operation(null, null));
+	}
+
+	// Read back the text left by an editor which didn't exit normally, null if none. It may
+	// be called on a background thread, as long as the text isn't edited meanwhile.
+	public Recovery recover() {
+		if (writer == null || !snapshotFile.exists()) {
+			return null;
+		}
+
+		try (DataInputStream snapshot = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), BUFFER_SIZE))) {
+			if (snapshot.readInt() != MAGIC) {
+				return null;
+			}
+
+			long snapshotEpoch = snapshot.readLong();
+			String path = snapshot.readUTF();
+			StringBuilder text = new StringBuilder(readChars(snapshot, snapshot.readInt()));
+
+			// The journal belongs to an older snapshot when the editor died while compacting
+			if (journalFile.exists()) {
+				try (DataInputStream journal = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), BUFFER_SIZE))) {
+					if (journal.readInt() == MAGIC && journal.readLong() == snapshotEpoch) {
+						replay(journal, text);
+					}
+				} catch(EOFException e) {
+					// The journal has no complete header
+				}
+			}
+
+			return new Recovery(path.isEmpty() ? null : new File(path), text.toString());
+		} catch(IOException e) {
+			reportError(e);
+			return null;
+		}
+	}
+
+	// Write the pending operations and stop the writer
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+
+		writer.shutdown();
+		try {
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		flush();
+		try {
+			closeJournal();
+			lock.release();
+			lock.channel().close();
+		} catch(IOException e) {
+			reportError(e);
+		}
+	}
+
+	private static File getDirectory() {
+		return new File(System.getProperty("user.home"), ".fxeditor");
+	}
+
+	// Slot 0 keeps the names of the single journal of earlier versions
+	private static String getName(int slot) {
+		return (slot == 0) ? "journal" : "journal-" + slot;
+	}
+
+	// The lock of the slot, null if another journal owns it
+	private static FileLock tryLock(File directory, int slot) throws IOException {
+		FileChannel channel = FileChannel.open(new File(directory, getName(slot) + ".lock").toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			FileLock lock = channel.tryLock();
+			if (lock != null) {
+				return lock;
+			}
+		} catch(OverlappingFileLockException e) {
+			// Another journal of this editor owns the slot
+		}
+		channel.close();
+		return null;
+	}
+
+	private void reportError(IOException e) {
+		if (onError != null) {
+			Platform.runLater(() -> onError.accept(e));
+		}
+	}
+
+	private void compact() {
+		active = true;
+		journalLength = 0;
+		lastCompaction = System.currentTimeMillis();
+
+		File file = this.file.get();
+		add(new Operation(editor.getDocumentSnapshot(), (file != null) ? file.getAbsolutePath() : ""));
+	}
+
+	private void add(Operation operation) {
+		synchronized (this) {
+			pending.add(operation);
+		}
+	}
+
+	private synchronized List<Operation> takePending() {
+		List<Operation> operations = pending;
+		pending = new ArrayList<>();
+		return operations;
+	}
+
+	// Runs on the writer thread, or on the caller of close once the writer has stopped
+	private void flush() {
+		List<Operation> operations = takePending();
+		if (operations.isEmpty()) {
+			return;
+		}
+
+		try {
+			for (Operation operation : operations) {
+				if (operation.text != null) {
+					if (out == null) {
+						// The snapshot before couldn't be written
+						continue;
+					}
+					out.writeInt(operation.start);
+					out.writeInt(operation.end);
+					out.writeInt(operation.text.length());
+					writeChars(out, operation.text);
+				} else if (operation.snapshot != null) {
+					writeSnapshot(operation.snapshot, operation.path);
+				} else {
+					closeJournal();
+					Files.deleteIfExists(journalFile.toPath());
+					Files.deleteIfExists(snapshotFile.toPath());
+				}
+			}
+
+			// One sync per batch keeps the disk traffic low
+			if (out != null) {
+				out.flush();
+				fileOut.getFD().sync();
+			}
+			failing = false;
+		} catch(IOException e) {
+			// Only report once until the journal can be written again
+			if (!failing) {
+				failing = true;
+				reportError(e);
+			}
+		}
+	}
+
+	// Write the whole text to a new snapshot and start an empty journal for it
+	private void writeSnapshot(PieceTable text, String path) throws IOException {
+		closeJournal();
+		epoch = Math.max(epoch + 1, System.currentTimeMillis());
+
+		File temp = new File(snapshotFile.getPath() + ".tmp");
+		try (FileOutputStream tempOut = new FileOutputStream(temp);
+				DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(tempOut, BUFFER_SIZE))) {
+			snapshot.writeInt(MAGIC);
+			snapshot.writeLong(epoch);
+			snapshot.writeUTF(path);
+			snapshot.writeInt(text.length());
+
+			writeChars(snapshot, text);
+
+			snapshot.flush();
+			tempOut.getFD().sync();
+		}
+		Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		fileOut = new FileOutputStream(journalFile);
+		out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeLong(epoch);
+	}
+
+	// Write the chars in the format of DataOutputStream.writeChar, a buffer full at a time
+	private void writeChars(DataOutputStream out, CharSequence text) throws IOException {
+		CharBuffer view = ByteBuffer.wrap(bytes).asCharBuffer();
+		for (int position = 0; position < text.length(); position += chars.length) {
+			int count = Math.min(chars.length, text.length() - position);
+			if (text instanceof PieceTable) {
+				((PieceTable) text).getChars(position, position + count, chars, 0);
+			} else {
+				text.toString().getChars(position, position + count, chars, 0);
+			}
+
+			view.clear();
+			view.put(chars, 0, count);
+			out.write(bytes, 0, count * 2);
+		}
+	}
+
+	private void closeJournal() throws IOException {
+		if (out != null) {
+			try {
+				out.close();
+			} finally {
+				out = null;
+				fileOut = null;
+			}
+		}
+	}
+
+	// Apply the recorded edits, a record cut short by the crash ends the replay
+	private void replay(DataInputStream journal, StringBuilder text) throws IOException {
+		try {
+			while (true) {
+				int start = journal.readInt();
+				int end = journal.readInt();
+				String inserted = readChars(journal, journal.readInt());
+				if (start < 0 || start > end || end > text.length()) {
+					return;
+				}
+				text.replace(start, end, inserted);
+			}
+		} catch(EOFException e) {
+			// The end of the journal
+		}
+	}
+
+	// Read the chars written by writeChars, a buffer full at a time
+	private static String readChars(DataInputStream in, int length) throws IOException {
+		if (length < 0) {
+			throw new EOFException();
+		}
+
+		char[] chars = new char[length];
+		byte[] bytes = new byte[(int) Math.min(BUFFER_SIZE * 2, length * 2L)];
+		CharBuffer view = ByteBuffer.wrap(bytes).asCharBuffer();
+		for (int position = 0; position < length; ) {
+			int count = Math.min(bytes.length / 2, length - position);
+			in.readFully(bytes, 0, count * 2);
+
+			view.clear();
+			view.get(chars, position, count);
+			position += count;
+		}
+		return new String(chars);
+	}
+
+	public static class Recovery {
+		private final File file;
+		private final String text;
+
+		private Recovery(File file, String text) {
+			this.file = file;
+			this.text = text;
+		}
+
+		// The file the text was edited from, null if it hasn't been saved
+		public File getFile() {
+			return file;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	// An edit, a snapshot of the whole text, or clearing the journal when all fields are null
+	private static class Operation {
+		private int start;
+		private int end;
+		private String text;
+		private PieceTable snapshot;
+		private String path;
+
+		private Operation(int start, int end, String text) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+
+		private Operation(PieceTable snapshot, String path) {
+			this.snapshot = snapshot;
+			this.path = path;
+		}
+	}
+}
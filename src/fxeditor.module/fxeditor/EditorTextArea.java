@@ -0,0 +1,562 @@
+package fxeditor;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.scene.control.*;
+import javafx.scene.input.*;
+
+import java.text.*;
+import java.util.*;
+
+public class EditorTextArea extends TextArea {
+
+	private static final long DEFAULT_UNDO_MEMORY_LIMIT = 32 * 1024 * 1024;
+
+	private static final KeyCombination UNDO = KeyCombination.valueOf("Shortcut+Z");
+	private static final KeyCombination REDO = KeyCombination.valueOf("Shortcut+Y");
+	private static final KeyCombination REDO_ALTERNATE = KeyCombination.valueOf("Shortcut+Shift+Z");
+
+	private List<TextChangeListener> listeners = new ArrayList<>();
+
+	// The metric of every listener when the editor is instrumented
+	private List<String> listenerNames = new ArrayList<>();
+
+	// A mirror of the text area's content, kept in step with every change. The content
+	// keeps its own copy of the characters, split into a builder per line, since the skin
+	// lays out its lines from it and can't be given another store. The document is there
+	// to be read and snapshotted without asking the text area for the whole text. It
+	// doesn't make an edit cheaper than the text area allows: the text area builds its
+	// whole text again the first time its length is read after a change.
+	private PieceTable document = new PieceTable("");
+
+	// The text area builds its whole text to move the caret over a character or a word, or
+	// to delete one, these iterators go over the document instead
+	private BreakIterator charIterator;
+	private BreakIterator wordIterator;
+
+	// The change currently being applied by replaceText, -1 if none
+	private int pendingStart = -1;
+	private int pendingEnd;
+	private String pendingText;
+
+	// The matches replaced by replaceAll, recorded as a compound edit
+	private Replacements pendingReplacements;
+
+	// The generation restored by undo or redo, -1 if the change is a new edit
+	private long restoredGeneration = -1;
+
+	private int length;
+
+	// The text passed to load, so the document can share it instead of copying the content
+	private String loadedText;
+	private boolean appending;
+
+	// Every change moves the text to a new generation, the text is modified unless it is
+	// back at the generation of the save point. Undo and redo return to the generation
+	// of the edit, setText replaces the whole text with a new generation.
+	private long generationCount;
+	private long generation;
+	private long savedGeneration;
+	private long loadedGeneration;
+
+	// The text area keeps its own history without a limit, so the changes are applied to
+	// the content directly and recorded here instead
+	private UndoManager undoManager = new UndoManager(Long.getLong("fxeditor.undoMemoryLimit", DEFAULT_UNDO_MEMORY_LIMIT));
+
+	public EditorTextArea() {
+		getContent().addListener(obs -> contentChanged());
+
+		addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+			if (UNDO.match(e)) {
+				undoEdit();
+				e.consume();
+			} else if (REDO.match(e) || REDO_ALTERNATE.match(e)) {
+				redoEdit();
+				e.consume();
+			}
+		});
+	}
+
+	public UndoManager getUndoManager() {
+		return undoManager;
+	}
+
+	// undo and redo of the text area can't be overridden, they only know its own history
+	public ReadOnlyBooleanProperty canUndoProperty() {
+		return undoManager.undoableProperty();
+	}
+
+	public ReadOnlyBooleanProperty canRedoProperty() {
+		return undoManager.redoableProperty();
+	}
+
+	// Revert the last edit and select the text it removed
+	public void undoEdit() {
+		UndoManager.Edit edit = undoManager.undo();
+		if (edit != null) {
+			int start = edit.getStart();
+			applyEdit(start, start + edit.getInsertedLength(), edit.getRemoved(document), edit.getGenerationBefore());
+			selectRange(start, start + edit.getRemovedLength());
+		}
+	}
+
+	// Apply the last reverted edit again and put the caret after it
+	public void redoEdit() {
+		UndoManager.Edit edit = undoManager.redo();
+		if (edit != null) {
+			int start = edit.getStart();
+			applyEdit(start, start + edit.getRemovedLength(), edit.getInserted(document), edit.getGenerationAfter());
+			selectRange(start + edit.getInsertedLength(), start + edit.getInsertedLength());
+		}
+	}
+
+	private void applyEdit(int start, int end, String text, long generation) {
+		restoredGeneration = generation;
+		try {
+			replaceText(start, end, text);
+		} finally {
+			restoredGeneration = -1;
+		}
+	}
+
+	public CharSequence getDocument() {
+		return document;
+	}
+
+	// A copy of the document which may be read from another thread
+	public PieceTable getDocumentSnapshot() {
+		return document.snapshot();
+	}
+
+	public boolean isModified() {
+		return generation != savedGeneration;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	// Count the unchanged text as modified, such as when it is to be saved in another form
+	public void invalidateSavePoint() {
+		savedGeneration = -1;
+	}
+
+	// Take the current text as the saved one
+	public void markSavePoint() {
+		markSavePoint(generation);
+	}
+
+	// Take the text of an earlier generation as the saved one, once it has been saved in the
+	// background. It is ignored when another text has been loaded meanwhile.
+	public void markSavePoint(long generation) {
+		if (generation >= loadedGeneration) {
+			savedGeneration = generation;
+		}
+	}
+
+	// Replace the text with the content of a file, the loaded text is unmodified
+	public void load(String text) {
+		loadedText = text;
+		try {
+			setText(text);
+		} finally {
+			loadedText = null;
+		}
+	}
+
+	// Append text without recording an edit or moving the caret, the appended
+	// text is part of the loaded file and doesn't modify the text
+	public void appendLoadedText(String text) {
+		pendingStart = length;
+		pendingEnd = length;
+		pendingText = text;
+		appending = true;
+		try {
+			getContent().insert(length, text, true);
+		} finally {
+			pendingStart = -1;
+			pendingText = null;
+			appending = false;
+		}
+	}
+
+	// Replace the matches in a single change of the text, from the first match to the end of
+	// the last one. The history only keeps the matches and their replacements.
+	public void replaceAll(Replacements replacements) {
+		if (replacements.size() == 0) {
+			return;
+		}
+
+		int first = replacements.getStart(0);
+		int last = replacements.getEnd(replacements.size() - 1);
+		StringBuilder text = new StringBuilder();
+		int start = first;
+		for (int i = 0; i < replacements.size(); i++) {
+			text.append(document, start, replacements.getStart(i)).append(replacements.getText(i));
+			start = replacements.getEnd(i);
+		}
+
+		pendingReplacements = replacements;
+		try {
+			replaceText(first, last, text.toString());
+		} finally {
+			pendingReplacements = null;
+		}
+	}
+
+	// The name tells the listener apart in the instrumentation report
+	public void addTextChangeListener(String name, TextChangeListener listener) {
+		listeners.add(listener);
+		listenerNames.add("text." + name);
+	}
+
+	public void removeTextChangeListener(TextChangeListener listener) {
+		int index = listeners.indexOf(listener);
+		if (index != -1) {
+			listeners.remove(index);
+			listenerNames.remove(index);
+		}
+	}
+
+	@Override
+	public void replaceText(int start, int end, String text) {
+		if (start > end) {
+			throw new IllegalArgumentException();
+		}
+		if (text == null) {
+			throw new NullPointerException();
+		}
+		if (start < 0 || end > getLength()) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int remaining = length - (end - start);
+		pendingStart = start;
+		pendingEnd = end;
+		pendingText = text;
+		try {
+			// Change the content like the text area does, apart from adding to its history.
+			// Only the last part of the change notifies the listeners.
+			if (end != start) {
+				getContent().delete(start, end, text.isEmpty());
+			}
+			if (!text.isEmpty()) {
+				getContent().insert(start, text, true);
+			}
+
+			// The content doesn't notify when the inserted text is filtered away
+			if (pendingStart != -1 && getContent().length() != length) {
+				contentChanged();
+			}
+
+			int caret = start + getContent().length() - remaining;
+			selectRange(caret, caret);
+		} finally {
+			pendingStart = -1;
+			pendingText = null;
+		}
+	}
+
+	@Override
+	public boolean deletePreviousChar() {
+		if (!isEditable() || isDisabled()) {
+			return false;
+		}
+
+		int caret = getCaretPosition();
+		if (caret != getAnchor()) {
+			replaceSelection("");
+			return true;
+		} else if (caret > 0) {
+			deleteText(Character.offsetByCodePoints(document, caret, -1), caret);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean deleteNextChar() {
+		if (!isEditable() || isDisabled()) {
+			return false;
+		}
+
+		int caret = getCaretPosition();
+		if (caret != getAnchor()) {
+			replaceSelection("");
+			return true;
+		} else if (caret < getLength()) {
+			deleteText(caret, getCharIterator().following(caret));
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void forward() {
+		int caret = getCaretPosition();
+		if (caret != getAnchor()) {
+			int position = Math.max(caret, getAnchor());
+			selectRange(position, position);
+		} else if (caret < getLength()) {
+			int position = getCharIterator().following(caret);
+			selectRange(position, position);
+		}
+		deselect();
+	}
+
+	@Override
+	public void backward() {
+		int caret = getCaretPosition();
+		if (caret != getAnchor()) {
+			int position = Math.min(caret, getAnchor());
+			selectRange(position, position);
+		} else if (caret > 0) {
+			int position = getCharIterator().preceding(caret);
+			selectRange(position, position);
+		}
+		deselect();
+	}
+
+	@Override
+	public void selectForward() {
+		if (getCaretPosition() < getLength()) {
+			selectRange(getAnchor(), getCharIterator().following(getCaretPosition()));
+		}
+	}
+
+	@Override
+	public void selectBackward() {
+		if (getCaretPosition() > 0) {
+			selectRange(getAnchor(), getCharIterator().preceding(getCaretPosition()));
+		}
+	}
+
+	@Override
+	public void previousWord() {
+		previousWord(false);
+	}
+
+	@Override
+	public void selectPreviousWord() {
+		previousWord(true);
+	}
+
+	@Override
+	public void nextWord() {
+		nextWord(false, false);
+	}
+
+	@Override
+	public void selectNextWord() {
+		nextWord(true, false);
+	}
+
+	@Override
+	public void endOfNextWord() {
+		nextWord(false, true);
+	}
+
+	@Override
+	public void selectEndOfNextWord() {
+		nextWord(true, true);
+	}
+
+	// Move to the start of the word before the caret, as the text area does
+	private void previousWord(boolean select) {
+		int length = getLength();
+		if (length == 0) {
+			return;
+		}
+
+		BreakIterator words = getWordIterator();
+		int position = words.preceding(clamp(getCaretPosition(), length));
+		while (position != BreakIterator.DONE && !Character.isLetterOrDigit(document.charAt(clamp(position, length - 1)))) {
+			position = words.preceding(clamp(position, length));
+		}
+		selectRange(select ? getAnchor() : position, position);
+	}
+
+	// Move to the start of the next word, or the end of it, as the text area does. Moving to
+	// the start only skips spaces and tabs, so it stops at a line break.
+	private void nextWord(boolean select, boolean toEnd) {
+		int length = getLength();
+		if (length == 0) {
+			return;
+		}
+
+		BreakIterator words = getWordIterator();
+		int last = words.following(clamp(getCaretPosition(), toEnd ? length : length - 1));
+		int current = words.next();
+		while (current != BreakIterator.DONE) {
+			for (int position = last; position <= current; position++) {
+				char c = document.charAt(clamp(position, length - 1));
+				if (toEnd ? !Character.isLetterOrDigit(c) : c != ' ' && c != '\t') {
+					selectRange(select ? getAnchor() : position, position);
+					return;
+				}
+			}
+			last = current;
+			current = words.next();
+		}
+
+		if (select) {
+			selectRange(getAnchor(), length);
+		} else {
+			end();
+		}
+	}
+
+	private BreakIterator getCharIterator() {
+		if (charIterator == null) {
+			charIterator = BreakIterator.getCharacterInstance();
+		}
+		charIterator.setText(new DocumentIterator(document));
+		return charIterator;
+	}
+
+	private BreakIterator getWordIterator() {
+		if (wordIterator == null) {
+			wordIterator = BreakIterator.getWordInstance();
+		}
+		wordIterator.setText(new DocumentIterator(document));
+		return wordIterator;
+	}
+
+	private static int clamp(int value, int max) {
+		return Math.max(0, Math.min(value, max));
+	}
+
+	private void contentChanged() {
+		int newLength = getContent().length();
+
+		if (pendingStart != -1) {
+			// The content strips some characters, so the inserted text may be shorter than requested
+			int inserted = newLength - length + pendingEnd - pendingStart;
+			String text = (inserted == pendingText.length()) ? pendingText : getContent().get(pendingStart, pendingStart + inserted);
+
+			// The document still holds the removed text while the edit is recorded
+			if (appending) {
+				// The appended text is part of the file, it only moves a modified text on
+				if (isModified()) {
+					generation = ++generationCount;
+				}
+			} else if (restoredGeneration != -1) {
+				generation = restoredGeneration;
+			} else {
+				long previous = generation;
+				generation = ++generationCount;
+				if (pendingReplacements != null && text == pendingText) {
+					undoManager.record(pendingReplacements, document, previous, generation);
+				} else {
+					// Don't join the edit with the one before the save point
+					String removed = (pendingEnd > pendingStart) ? document.subSequence(pendingStart, pendingEnd).toString() : "";
+					undoManager.record(pendingStart, removed, text, previous, generation, previous != savedGeneration);
+				}
+			}
+			document.replace(pendingStart, pendingEnd, text);
+			fireTextChanged(pendingStart, pendingEnd, text, newLength);
+			pendingStart = -1;
+		} else {
+			// setText bypasses replaceText, so treat it as a whole replacement
+			String text = (loadedText != null && loadedText.length() == newLength) ? loadedText : getContent().get();
+
+			document = new PieceTable(text);
+			undoManager.clear();
+			if (loadedText != null) {
+				generation = ++generationCount;
+				loadedGeneration = generation;
+				markSavePoint();
+			} else {
+				generation = ++generationCount;
+			}
+			fireTextChanged(0, length, text, newLength);
+		}
+	}
+
+	private void fireTextChanged(int start, int end, String text, int newLength) {
+		length = newLength;
+		for (int i = 0; i < listeners.size(); i++) {
+			TextChangeListener listener = listeners.get(i);
+			if (Instrumentation.isEnabled()) {
+				Instrumentation.time(listenerNames.get(i), () -> listener.textChanged(start, end, text));
+			} else {
+				listener.textChanged(start, end, text);
+			}
+		}
+	}
+
+	// Iterates over the document for the break iterators without copying it
+	private static class DocumentIterator implements CharacterIterator {
+
+		private CharSequence text;
+		private int index;
+
+		DocumentIterator(CharSequence text) {
+			this.text = text;
+		}
+
+		@Override
+		public char first() {
+			return setIndex(0);
+		}
+
+		@Override
+		public char last() {
+			return setIndex(Math.max(0, text.length() - 1));
+		}
+
+		@Override
+		public char current() {
+			return (index < text.length()) ? text.charAt(index) : DONE;
+		}
+
+		@Override
+		public char next() {
+			if (index < text.length()) {
+				index++;
+			}
+			return current();
+		}
+
+		@Override
+		public char previous() {
+			if (index == 0) {
+				return DONE;
+			}
+			index--;
+			return current();
+		}
+
+		@Override
+		public char setIndex(int position) {
+			if (position < 0 || position > text.length()) {
+				throw new IllegalArgumentException("Invalid index: " + position);
+			}
+			index = position;
+			return current();
+		}
+
+		@Override
+		public int getBeginIndex() {
+			return 0;
+		}
+
+		@Override
+		public int getEndIndex() {
+			return text.length();
+		}
+
+		@Override
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public Object clone() {
+			try {
+				return super.clone();
+			} catch(CloneNotSupportedException e) {
+				throw new InternalError(e);
+			}
+		}
+	}
+}
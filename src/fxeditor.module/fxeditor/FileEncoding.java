@@ -0,0 +1,170 @@
+package fxeditor;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+
+public class FileEncoding {
+
+	private static final int SAMPLE_SIZE = 8 * 1024;
+
+	private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private static final byte[] UTF_16BE_BOM = { (byte) 0xFE, (byte) 0xFF };
+	private static final byte[] UTF_16LE_BOM = { (byte) 0xFF, (byte) 0xFE };
+
+	// The charsets tried when the sample isn't UTF-8, earlier ones win a tie
+	private static final String[] CANDIDATES = { "Big5", "GBK", "Shift_JIS", "EUC-KR", "windows-1252", "UTF-16LE", "UTF-16BE" };
+
+	// Frequent Chinese and Japanese characters, a right guess decodes the sample into many of them
+	private static final String FREQUENT_CHARACTERS =
+		"的一是不了人我在有他這这中大來来上國国個个到說说們们為为子和你地出道也時时年就那要下以生會会自著着" +
+		"去之過过家學学對对可她裡里後后小麼么心多天而能好都然沒没日於于起還还發发成事只作當当想看文無无開开手" +
+		"のにはをたがでてとしれさあるいうかなまも";
+
+	public static final FileEncoding DEFAULT = new FileEncoding(Charset.defaultCharset(), false);
+
+	private final Charset charset;
+	private final boolean hasByteOrderMark;
+
+	public FileEncoding(Charset charset, boolean hasByteOrderMark) {
+		this.charset = charset;
+		this.hasByteOrderMark = hasByteOrderMark;
+	}
+
+	// Guess the encoding from the byte order mark, or else from the first few kilobytes
+	public static FileEncoding detect(File file) throws IOException {
+		byte[] sample = new byte[SAMPLE_SIZE];
+		int count = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while (count < sample.length && (read = in.read(sample, count, sample.length - count)) != -1) {
+				count += read;
+			}
+		}
+
+		return detect(sample, count);
+	}
+
+	public static FileEncoding detect(byte[] sample, int count) {
+		if (startsWith(sample, count, UTF_8_BOM)) {
+			return new FileEncoding(StandardCharsets.UTF_8, true);
+		} else if (startsWith(sample, count, UTF_16BE_BOM)) {
+			return new FileEncoding(StandardCharsets.UTF_16BE, true);
+		} else if (startsWith(sample, count, UTF_16LE_BOM)) {
+			return new FileEncoding(StandardCharsets.UTF_16LE, true);
+		}
+
+		// UTF-16 text without a byte order mark has a zero byte in most ASCII characters
+		int evenZeros = 0;
+		int oddZeros = 0;
+		boolean isAscii = true;
+		for (int i = 0; i < count; i++) {
+			if (sample[i] == 0) {
+				if (i % 2 == 0) {
+					evenZeros++;
+				} else {
+					oddZeros++;
+				}
+			} else if (sample[i] < 0) {
+				isAscii = false;
+			}
+		}
+		if (count >= 2 && evenZeros > count / 4 && oddZeros < count / 64) {
+			return new FileEncoding(StandardCharsets.UTF_16BE, false);
+		} else if (count >= 2 && oddZeros > count / 4 && evenZeros < count / 64) {
+			return new FileEncoding(StandardCharsets.UTF_16LE, false);
+		}
+
+		// ASCII is a subset of UTF-8, a file starting with plain ASCII is most likely UTF-8
+		// further on, while the platform's charset may not decode the rest the same
+		if (isAscii || decode(StandardCharsets.UTF_8, sample, count) != null) {
+			return new FileEncoding(StandardCharsets.UTF_8, false);
+		}
+
+		Charset best = null;
+		int bestScore = Integer.MIN_VALUE;
+		for (String name : CANDIDATES) {
+			if (!Charset.isSupported(name)) {
+				continue;
+			}
+
+			Charset charset = Charset.forName(name);
+			String text = decode(charset, sample, count);
+			if (text != null && score(text) > bestScore) {
+				best = charset;
+				bestScore = score(text);
+			}
+		}
+
+		return (best != null) ? new FileEncoding(best, false) : DEFAULT;
+	}
+
+	// Decode the sample strictly, null if it isn't valid in the charset. A character cut
+	// at the end of the sample doesn't count as an error.
+	private static String decode(Charset charset, byte[] sample, int count) {
+		CharsetDecoder decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+		CharBuffer chars = CharBuffer.allocate(count);
+
+		CoderResult result = decoder.decode(ByteBuffer.wrap(sample, 0, count), chars, false);
+		if (result.isError()) {
+			return null;
+		}
+
+		chars.flip();
+		return chars.toString();
+	}
+
+	private static int score(String text) {
+		int score = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (FREQUENT_CHARACTERS.indexOf(c) != -1) {
+				score += 10;
+			} else if (Character.isISOControl(c) && c != '\n' && c != '\r' && c != '\t') {
+				score -= 10;
+			} else if (Character.getType(c) == Character.PRIVATE_USE || Character.getType(c) == Character.UNASSIGNED) {
+				score -= 10;
+			}
+		}
+		return score;
+	}
+
+	private static boolean startsWith(byte[] sample, int count, byte[] prefix) {
+		if (count < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (sample[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public boolean hasByteOrderMark() {
+		return hasByteOrderMark;
+	}
+
+	public byte[] getByteOrderMark() {
+		if (!hasByteOrderMark) {
+			return new byte[0];
+		} else if (charset.equals(StandardCharsets.UTF_16BE)) {
+			return UTF_16BE_BOM.clone();
+		} else if (charset.equals(StandardCharsets.UTF_16LE)) {
+			return UTF_16LE_BOM.clone();
+		} else {
+			return UTF_8_BOM.clone();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return hasByteOrderMark ? charset.name() + " BOM" : charset.name();
+	}
+}
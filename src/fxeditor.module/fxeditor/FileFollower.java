@@ -0,0 +1,96 @@
+package fxeditor;
+
+import javafx.concurrent.Task;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+public class FileFollower extends Task<Void> {
+
+	static final long POLL_INTERVAL = 500;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File file;
+	private TextDecoder decoder;
+
+	// The first byte not read yet
+	private long position;
+
+	// Hands the text appended to the file to the consumer, starting where the loader stopped.
+	// The task returns when the file is truncated or replaced, it has to be loaded again then.
+	public FileFollower(File file, FileLoader loader, Consumer<String> consumer) {
+		this.file = file;
+		position = loader.getLoadedSize();
+		decoder = new TextDecoder(loader.getEncoding().getCharset(), loader.endsWithReturn(), consumer, this::isCancelled);
+	}
+
+	// The number of byte sequences appended which couldn't be decoded
+	public long getReplacementCount() {
+		return decoder.getReplacementCount();
+	}
+
+	@Override
+	protected Void call() throws IOException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Object key = getFileKey(file);
+			ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+			while (!isCancelled()) {
+				Object currentKey = getFileKey(file);
+
+				// The file is missing while it is being rotated, wait for the new one
+				if (currentKey != null) {
+					if (!currentKey.equals(key) || channel.size() < position) {
+						return null;
+					}
+					read(channel, bytes);
+				}
+
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				} catch(InterruptedException e) {
+					if (isCancelled()) {
+						return null;
+					}
+					throw e;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	// Something telling the file apart from another one later created at the same path, null
+	// if there is no file at the path
+	static Object getFileKey(File file) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			return (attributes.fileKey() != null) ? attributes.fileKey() : attributes.creationTime();
+		} catch(NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	// Decode the bytes appended since the last read. An incomplete character at the end is
+	// kept in the byte buffer until the rest of it is written.
+	private void read(FileChannel channel, ByteBuffer bytes) throws IOException, InterruptedException {
+		long size = channel.size();
+		while (position < size && !isCancelled()) {
+			bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + size - position));
+			int count = channel.read(bytes, position);
+			if (count <= 0) {
+				break;
+			}
+			position += count;
+
+			bytes.flip();
+			decoder.decode(bytes, false);
+			bytes.compact();
+		}
+	}
+}
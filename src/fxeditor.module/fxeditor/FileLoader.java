@@ -0,0 +1,97 @@
+package fxeditor;
+
+import javafx.concurrent.Task;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+public class FileLoader extends Task<Void> {
+
+	private static final int WINDOW_SIZE = 8 * 1024 * 1024;
+
+	private File file;
+	private FileEncoding encoding;
+	private Consumer<String> consumer;
+	private TextDecoder decoder;
+	private long loadedSize;
+
+	// The encoding is detected from the file when it is null
+	public FileLoader(File file, FileEncoding encoding, Consumer<String> consumer) {
+		this.file = file;
+		this.encoding = encoding;
+		this.consumer = consumer;
+	}
+
+	// The encoding the file was decoded with, known once loading has started
+	public synchronized FileEncoding getEncoding() {
+		return encoding;
+	}
+
+	// The number of bytes loaded, the file may have grown since
+	public synchronized long getLoadedSize() {
+		return loadedSize;
+	}
+
+	// Whether the text ends with a CR, a LF appended to the file later completes a CRLF
+	public synchronized boolean endsWithReturn() {
+		return decoder != null && decoder.endsWithReturn();
+	}
+
+	// The most frequent line ending of the file, null if it has a single line. The line
+	// endings are counted so the dominant one can be written back on save.
+	public synchronized LineEnding getLineEnding() {
+		return (decoder != null) ? decoder.getLineEnding() : null;
+	}
+
+	// The number of byte sequences which couldn't be decoded, the text has replacement
+	// characters instead of them
+	public synchronized long getReplacementCount() {
+		return (decoder != null) ? decoder.getReplacementCount() : 0;
+	}
+
+	@Override
+	protected Void call() throws IOException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= Integer.MAX_VALUE) {
+				throw new IOException("File too large: " + file);
+			}
+
+			FileEncoding encoding = getEncoding();
+			if (encoding == null) {
+				encoding = FileEncoding.detect(file);
+			}
+
+			TextDecoder decoder = new TextDecoder(encoding.getCharset(), false, consumer, this::isCancelled);
+			synchronized (this) {
+				this.encoding = encoding;
+				this.decoder = decoder;
+			}
+
+			// Map the file window by window, a window starts at the first byte not yet decoded
+			long position = encoding.getByteOrderMark().length;
+			while (position < size) {
+				if (isCancelled()) {
+					return null;
+				}
+
+				int windowSize = (int) Math.min(WINDOW_SIZE, size - position);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+				decoder.decode(window, position + windowSize == size);
+
+				position += window.position();
+				updateProgress(position, size);
+			}
+			decoder.finish();
+
+			synchronized (this) {
+				loadedSize = size;
+			}
+
+			return null;
+		}
+	}
+}
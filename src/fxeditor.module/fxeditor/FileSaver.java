@@ -0,0 +1,217 @@
+package fxeditor;
+
+import javafx.concurrent.Task;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+public class FileSaver extends Task<Void> {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File file;
+	private CharSequence text;
+	private FileEncoding encoding;
+	private LineEnding lineEnding;
+
+	// The text must not change while it is saved, pass a snapshot of the document. The
+	// line feeds of the text are written as the given line ending.
+	public FileSaver(File file, CharSequence text, FileEncoding encoding, LineEnding lineEnding) {
+		this.file = file;
+		this.text = text;
+		this.encoding = encoding;
+		this.lineEnding = lineEnding;
+	}
+
+	@Override
+	protected Void call() throws IOException {
+		// Write a temporary file next to the target, the target is only replaced once the
+		// whole text is on disk, so a failed save leaves the old file untouched. A link is
+		// followed, the file it leads to is replaced and the link stays.
+		Path target = file.toPath().toAbsolutePath();
+		if (Files.exists(target)) {
+			target = target.toRealPath();
+		}
+		Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+
+		try {
+			write(temp);
+			copyAttributes(target, temp);
+			if (isCancelled()) {
+				Files.deleteIfExists(temp);
+				return null;
+			}
+
+			try {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			syncDirectory(target.getParent());
+		} catch(IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		return null;
+	}
+
+	private void write(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+			// Report the characters the charset can't hold, rather than silently losing them
+			CharsetEncoder encoder = encoding.getCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+			char[] chars = new char[BUFFER_SIZE];
+			char[] converted = new char[BUFFER_SIZE * 2];
+			ByteBuffer bytes = ByteBuffer.allocateDirect((int)(BUFFER_SIZE * encoder.maxBytesPerChar()));
+			CharBuffer input = CharBuffer.allocate(BUFFER_SIZE * 3);
+			input.flip();
+
+			bytes.put(encoding.getByteOrderMark());
+			write(channel, bytes);
+
+			int length = text.length();
+			int position = 0;
+			while (position < length) {
+				if (isCancelled()) {
+					return;
+				}
+
+				// Read the next chunk of the text, a surrogate pair cut at the end stays in the input
+				int count = Math.min(BUFFER_SIZE, length - position);
+				getChars(position, position + count, chars);
+				if (lineEnding == LineEnding.LF) {
+					input.compact().put(chars, 0, count).flip();
+				} else {
+					input.compact().put(converted, 0, convertLineEndings(chars, count, converted)).flip();
+				}
+				position += count;
+
+				encode(encoder, input, bytes, channel, position == length);
+				updateProgress(position, length);
+			}
+
+			if (length == 0) {
+				encode(encoder, input, bytes, channel, true);
+			}
+			bytes.clear();
+			encoder.flush(bytes);
+			write(channel, bytes);
+
+			// Make sure the text is on disk before the old file is replaced
+			channel.force(true);
+		}
+	}
+
+	// Make the rename durable as well, not every platform can open a directory
+	private void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch(IOException e) {
+			// The rename is still done, it may just not survive a power loss
+		}
+	}
+
+	// Keep the owner, the group, the permissions, the access list and the extended attributes
+	// of the replaced file, each where the file system has them. Those which can't be copied
+	// are left as the new file has them.
+	private void copyAttributes(Path source, Path target) {
+		if (!Files.exists(source)) {
+			return;
+		}
+
+		PosixFileAttributeView posix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		if (posix != null) {
+			try {
+				PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+				try {
+					posix.setOwner(attributes.owner());
+				} catch(IOException e) {
+					// Only a privileged user can give a file away
+				}
+				try {
+					posix.setGroup(attributes.group());
+				} catch(IOException e) {
+					// The user isn't a member of the group
+				}
+				// Set last, changing the owner may clear some of them
+				posix.setPermissions(attributes.permissions());
+			} catch(IOException e) {
+				// The new file keeps the default permissions
+			}
+		}
+
+		AclFileAttributeView acl = Files.getFileAttributeView(target, AclFileAttributeView.class);
+		if (acl != null) {
+			try {
+				acl.setAcl(Files.getFileAttributeView(source, AclFileAttributeView.class).getAcl());
+			} catch(IOException e) {
+				// The new file keeps the inherited access list
+			}
+		}
+
+		UserDefinedFileAttributeView sourceAttributes = Files.getFileAttributeView(source, UserDefinedFileAttributeView.class);
+		UserDefinedFileAttributeView targetAttributes = Files.getFileAttributeView(target, UserDefinedFileAttributeView.class);
+		if (sourceAttributes != null && targetAttributes != null) {
+			try {
+				for (String name : sourceAttributes.list()) {
+					ByteBuffer value = ByteBuffer.allocate(sourceAttributes.size(name));
+					sourceAttributes.read(name, value);
+					value.flip();
+					targetAttributes.write(name, value);
+				}
+			} catch(IOException e) {
+				// Not every attribute may be written, such as those of another namespace
+			}
+		}
+	}
+
+	private int convertLineEndings(char[] chars, int count, char[] converted) {
+		String separator = lineEnding.getSeparator();
+		int length = 0;
+		for (int i = 0; i < count; i++) {
+			if (chars[i] == '\n') {
+				for (int j = 0; j < separator.length(); j++) {
+					converted[length++] = separator.charAt(j);
+				}
+			} else {
+				converted[length++] = chars[i];
+			}
+		}
+		return length;
+	}
+
+	private void getChars(int start, int end, char[] dst) {
+		if (text instanceof PieceTable) {
+			((PieceTable) text).getChars(start, end, dst, 0);
+		} else {
+			for (int i = start; i < end; i++) {
+				dst[i - start] = text.charAt(i);
+			}
+		}
+	}
+
+	private void encode(CharsetEncoder encoder, CharBuffer input, ByteBuffer bytes, FileChannel channel, boolean endOfInput) throws IOException {
+		CoderResult result;
+		do {
+			bytes.clear();
+			result = encoder.encode(input, bytes, endOfInput);
+			write(channel, bytes);
+			if (result.isError()) {
+				throw new IOException("Some characters can't be saved in " + encoding.getCharset().name());
+			}
+		} while (result.isOverflow());
+	}
+
+	private void write(FileChannel channel, ByteBuffer bytes) throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+}
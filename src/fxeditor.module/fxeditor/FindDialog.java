@@ -1,5 +1,6 @@
 package fxeditor;
 
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.geometry.*;
 import javafx.scene.*;
@@ -7,33 +8,45 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.*;
 
+import java.util.regex.PatternSyntaxException;
+
 public class FindDialog {
 
 	private Stage owner, stage;
 	private Scene scene;
-	private TextArea editor;
+	private EditorTextArea editor;
+	private LargeFileViewer largeFileViewer;
+	private TextSearcher searcher;
+	private RegexSearcher regexSearcher;
+	private MatchIndex matchIndex;
 
 	private AnchorPane root;
 	private TitledPane radioButtonContainer;
 	private HBox textContainer, optionWrapper, optionContainer;
-	private VBox buttonContainer;
+	private VBox buttonContainer, checkBoxContainer;
 
-	private Label label;
+	private Label label, matchCount;
 	private TextField findTarget;
-	private Button findNext, cancel;
-	private CheckBox caseSensitive;
+	private Button findNext, findAll, cancel;
+	private CheckBox caseSensitive, regex;
 	private ToggleGroup directon;
 	private RadioButton up, down;
 
-	public FindDialog(Stage owner, TextArea editor) {
+	public FindDialog(Stage owner, EditorTextArea editor) {
 		this.owner = owner;
 		this.editor = editor;
 
+		matchIndex = new MatchIndex(editor);
+		matchIndex.countProperty().addListener(obs -> updateMatchCount(-1));
+		matchIndex.scanningProperty().addListener(obs -> updateMatchCount(-1));
+
 		findTarget = new TextField();
 		findTarget.setPrefHeight(26);
 		findTarget.setPrefWidth(259);
 		findTarget.textProperty().addListener((obs, oldValue, newValue) -> {
 			findNext.setDisable(newValue.isEmpty());
+			findAll.setDisable(newValue.isEmpty() || largeFileViewer != null);
+			matchIndex.stop();
 		});
 
 		label = new Label("尋找目標(_N):");
@@ -47,18 +60,28 @@ public class FindDialog {
 		AnchorPane.setLeftAnchor(textContainer, 10.0);
 		AnchorPane.setTopAnchor(textContainer, 10.0);
 
+		matchCount = new Label();
+		AnchorPane.setLeftAnchor(matchCount, 10.0);
+		AnchorPane.setTopAnchor(matchCount, 50.0);
+
 		findNext = new Button("找下一個(_F)");
 		findNext.setMaxHeight(Double.MAX_VALUE);
 		findNext.setMaxWidth(Double.MAX_VALUE);
 		findNext.setDefaultButton(true);
 		findNext.setDisable(true);
-		findNext.setOnAction(e -> {
+		findNext.setOnAction(Instrumentation.wrap("find.findNext", e -> {
 			if (up.isSelected()) {
 				findNext(Direction.UP, caseSensitive.isSelected());
 			} else {
 				findNext(Direction.DOWN, caseSensitive.isSelected());
 			}
-		});
+		}));
+
+		findAll = new Button("全部尋找(_A)");
+		findAll.setMaxHeight(Double.MAX_VALUE);
+		findAll.setMaxWidth(Double.MAX_VALUE);
+		findAll.setDisable(true);
+		findAll.setOnAction(Instrumentation.wrap("find.findAll", e -> findAll(caseSensitive.isSelected())));
 
 		cancel = new Button("取消");
 		cancel.setMaxHeight(Double.MAX_VALUE);
@@ -66,7 +89,7 @@ public class FindDialog {
 		cancel.setCancelButton(true);
 		cancel.setOnAction(e -> Event.fireEvent(stage, new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST)));
 
-		buttonContainer = new VBox(10, findNext, cancel);
+		buttonContainer = new VBox(10, findNext, findAll, cancel);
 		buttonContainer.setLayoutX(377);
 		buttonContainer.setLayoutY(18);
 		buttonContainer.setAlignment(Pos.CENTER);
@@ -75,6 +98,14 @@ public class FindDialog {
 
 		caseSensitive = new CheckBox("大小寫視為相異(_C)");
 		caseSensitive.setMnemonicParsing(true);
+		caseSensitive.selectedProperty().addListener(obs -> matchIndex.stop());
+
+		regex = new CheckBox("規則運算式(_E)");
+		regex.setMnemonicParsing(true);
+		regex.selectedProperty().addListener(obs -> matchIndex.stop());
+
+		checkBoxContainer = new VBox(10, caseSensitive, regex);
+		checkBoxContainer.setAlignment(Pos.BOTTOM_LEFT);
 
 		directon = new ToggleGroup();
 
@@ -98,7 +129,7 @@ public class FindDialog {
 		radioButtonContainer.setPrefHeight(66);
 		radioButtonContainer.setPrefWidth(192);
 
-		optionContainer = new HBox(10, caseSensitive, radioButtonContainer);
+		optionContainer = new HBox(10, checkBoxContainer, radioButtonContainer);
 		optionContainer.setLayoutX(23);
 		optionContainer.setLayoutY(109);
 		optionContainer.setAlignment(Pos.BOTTOM_CENTER);
@@ -112,7 +143,7 @@ public class FindDialog {
 		root.setMinHeight(Region.USE_PREF_SIZE);
 		root.setMinWidth(Region.USE_PREF_SIZE);
 		root.setPadding(new Insets(10));
-		root.getChildren().addAll(textContainer, buttonContainer, optionContainer);
+		root.getChildren().addAll(textContainer, matchCount, buttonContainer, optionContainer);
 
 		scene = new Scene(root);
 
@@ -120,7 +151,7 @@ public class FindDialog {
 		stage.initOwner(owner);
 		stage.initStyle(StageStyle.UTILITY);
 		stage.setTitle("尋找");
-		stage.setMinHeight(205);
+		stage.setMinHeight(230);
 		stage.setMinWidth(478);
 		stage.setScene(scene);
 		stage.setOnShowing(e -> {
@@ -137,38 +168,180 @@ public class FindDialog {
 	}
 
 	public void findNext(Direction dir, boolean isCaseSensitive) {
+		if (largeFileViewer != null) {
+			findInLargeFile(dir, isCaseSensitive);
+			return;
+		}
+
+		// Step through the found matches once all of them are known
+		if (matchIndex.isReady() && matchIndex.isActive(findTarget.getText(), isCaseSensitive, regex.isSelected())) {
+			findNextIndexed(dir);
+			return;
+		}
+
+		if (regex.isSelected()) {
+			findNextMatch(dir, isCaseSensitive);
+			return;
+		}
+
 		int targetIndex = 0;
-		String content = isCaseSensitive ? editor.getText() : editor.getText().toLowerCase();
-		String target = isCaseSensitive ? findTarget.getText() : findTarget.getText().toLowerCase();
+		TextSearcher searcher = getSearcher(isCaseSensitive);
 
 		if (dir == Direction.UP) {
-			targetIndex = content.lastIndexOf(target, editor.getCaretPosition() - 1);
+			targetIndex = searcher.lastIndexOf(editor.getDocument(), editor.getCaretPosition() - 1);
 		} else {
-			targetIndex = content.indexOf(target, editor.getCaretPosition());
+			targetIndex = searcher.indexOf(editor.getDocument(), editor.getCaretPosition());
 		}
 
 		if (targetIndex != -1) {
 			if (dir == Direction.UP) {
-				editor.selectRange(targetIndex + target.length(), targetIndex);
+				editor.selectRange(targetIndex + searcher.getLength(), targetIndex);
 			} else {
-				editor.selectRange(targetIndex, targetIndex + target.length());
+				editor.selectRange(targetIndex, targetIndex + searcher.getLength());
 			}
 		} else {
 			showTargetStringNotFoundDialog();
 		}
 	}
 
+	// The large file is searched in the background, the viewer selects the match found
+	private void findInLargeFile(Direction dir, boolean isCaseSensitive) {
+		LargeFileViewer viewer = largeFileViewer;
+		Task<Boolean> finder = viewer.createFinder(findTarget.getText(), dir, isCaseSensitive);
+		finder.setOnSucceeded(e -> {
+			matchCount.setText("");
+			if (!finder.getValue()) {
+				showTargetStringNotFoundDialog();
+			}
+		});
+		finder.setOnFailed(e -> {
+			matchCount.setText("");
+			showInfoDialog("無法讀取", "無法讀取 " + viewer.getFile().getName());
+		});
+		finder.setOnCancelled(e -> matchCount.setText(""));
+		matchCount.setText("搜尋中...");
+
+		Thread thread = new Thread(finder);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Find every match in the background, the index follows later edits of the text
+	private void findAll(boolean isCaseSensitive) {
+		try {
+			matchIndex.start(findTarget.getText(), isCaseSensitive, regex.isSelected());
+		} catch(PatternSyntaxException e) {
+			showInfoDialog("規則運算式錯誤", e.getDescription());
+		}
+	}
+
+	private void findNextIndexed(Direction dir) {
+		int caret = editor.getCaretPosition();
+		int index;
+
+		if (dir == Direction.UP) {
+			index = matchIndex.previous(caret - 1);
+		} else {
+			index = matchIndex.next(caret);
+			if (index != -1 && matchIndex.getEnd(index) == caret) {
+				index = (index + 1 < matchIndex.getCount()) ? index + 1 : -1;
+			}
+		}
+
+		if (index == -1) {
+			showTargetStringNotFoundDialog();
+			return;
+		}
+
+		if (dir == Direction.UP) {
+			editor.selectRange(matchIndex.getEnd(index), matchIndex.getStart(index));
+		} else {
+			editor.selectRange(matchIndex.getStart(index), matchIndex.getEnd(index));
+		}
+		updateMatchCount(index);
+	}
+
+	private void updateMatchCount(int index) {
+		if (matchIndex.isScanning()) {
+			matchCount.setText("搜尋中...");
+		} else if (matchIndex.countProperty().get() == -1) {
+			matchCount.setText("");
+		} else if (index == -1) {
+			matchCount.setText("共 " + matchIndex.getCount() + " 個符合");
+		} else {
+			matchCount.setText("第 " + (index + 1) + " / " + matchIndex.getCount() + " 個符合");
+		}
+	}
+
+	private void findNextMatch(Direction dir, boolean isCaseSensitive) {
+		try {
+			if (regexSearcher == null || !regexSearcher.matches(findTarget.getText(), isCaseSensitive)) {
+				regexSearcher = new RegexSearcher(findTarget.getText(), isCaseSensitive);
+			}
+
+			boolean found;
+			if (dir == Direction.UP) {
+				found = regexSearcher.findBackward(editor.getDocument(), editor.getCaretPosition() - 1);
+			} else {
+				// Step over an empty match at the caret, it would be found again and again
+				int from = editor.getCaretPosition();
+				found = regexSearcher.find(editor.getDocument(), from);
+				if (found && regexSearcher.end() == from) {
+					found = regexSearcher.find(editor.getDocument(), from + 1);
+				}
+			}
+
+			if (!found) {
+				showTargetStringNotFoundDialog();
+			} else if (dir == Direction.UP) {
+				editor.selectRange(regexSearcher.end(), regexSearcher.start());
+			} else {
+				editor.selectRange(regexSearcher.start(), regexSearcher.end());
+			}
+		} catch(PatternSyntaxException e) {
+			showInfoDialog("規則運算式錯誤", e.getDescription());
+		} catch(RegexSearcher.SearchTimeoutException e) {
+			showInfoDialog("搜尋逾時", "搜尋 " + getLastFindedString() + " 的時間過長");
+		}
+	}
+
+	private TextSearcher getSearcher(boolean isCaseSensitive) {
+		// Reuse the skip tables while the target stays the same
+		if (searcher == null || !searcher.matches(findTarget.getText(), isCaseSensitive)) {
+			searcher = new TextSearcher(findTarget.getText(), isCaseSensitive);
+		}
+		return searcher;
+	}
+
+	// Search another editor, such as the one of the selected tab
+	public void setEditor(EditorTextArea editor) {
+		this.editor = editor;
+		matchIndex.setEditor(editor);
+	}
+
+	public void setLargeFileViewer(LargeFileViewer largeFileViewer) {
+		this.largeFileViewer = largeFileViewer;
+
+		// The viewer only supports stepping through the matches
+		matchIndex.stop();
+		findAll.setDisable(findTarget.getText().isEmpty() || largeFileViewer != null);
+	}
+
 	public String getLastFindedString() {
 		return findTarget.getText();
 	}
 
 	private void showTargetStringNotFoundDialog() {
+		showInfoDialog("找不到", "找不到 " + getLastFindedString());
+	}
+
+	private void showInfoDialog(String title, String content) {
 		Alert alert = new Alert(Alert.AlertType.INFORMATION);
 		alert.initOwner(stage);
 		alert.initStyle(StageStyle.UTILITY);
-		alert.setTitle("找不到");
+		alert.setTitle(title);
 		alert.setHeaderText(null);
-		alert.setContentText("找不到 " + getLastFindedString());
+		alert.setContentText(content);
 		alert.getDialogPane().setPrefWidth(150);
 		alert.showAndWait();
 	}
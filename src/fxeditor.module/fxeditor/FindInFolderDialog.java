@@ -0,0 +1,217 @@
+package fxeditor;
+
+import javafx.event.Event;
+import javafx.geometry.*;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.input.*;
+import javafx.scene.layout.*;
+import javafx.stage.*;
+
+import java.io.File;
+import java.util.function.Consumer;
+
+public class FindInFolderDialog {
+
+	private Stage owner, stage;
+	private Scene scene;
+	private FolderSearcher folderSearcher;
+	private Consumer<FolderSearcher.Result> onOpen;
+
+	private VBox root;
+	private GridPane textContainer;
+	private HBox buttonContainer;
+
+	private Label targetLabel, folderLabel, status;
+	private TextField findTarget, folder;
+	private Button browse, search, stop, cancel;
+	private CheckBox caseSensitive;
+	private ListView<FolderSearcher.Result> results;
+
+	public FindInFolderDialog(Stage owner, Consumer<FolderSearcher.Result> onOpen) {
+		this.owner = owner;
+		this.onOpen = onOpen;
+
+		findTarget = new TextField();
+		findTarget.setMaxWidth(Double.MAX_VALUE);
+		findTarget.textProperty().addListener((obs, oldValue, newValue) -> updateSearchButton());
+
+		folder = new TextField();
+		folder.setMaxWidth(Double.MAX_VALUE);
+		folder.textProperty().addListener((obs, oldValue, newValue) -> updateSearchButton());
+
+		targetLabel = new Label("尋找目標(_N):");
+		targetLabel.setMnemonicParsing(true);
+		targetLabel.setLabelFor(findTarget);
+
+		folderLabel = new Label("資料夾(_D):");
+		folderLabel.setMnemonicParsing(true);
+		folderLabel.setLabelFor(folder);
+
+		browse = new Button("瀏覽(_B)...");
+		browse.setOnAction(e -> {
+			DirectoryChooser directoryChooser = new DirectoryChooser();
+			directoryChooser.setTitle("選擇資料夾");
+			File directory = new File(folder.getText());
+			if (directory.isDirectory()) {
+				directoryChooser.setInitialDirectory(directory);
+			}
+
+			directory = directoryChooser.showDialog(stage);
+			if (directory != null) {
+				folder.setText(directory.getPath());
+			}
+		});
+
+		caseSensitive = new CheckBox("大小寫視為相異(_C)");
+		caseSensitive.setMnemonicParsing(true);
+
+		ColumnConstraints colcon1 = new ColumnConstraints();
+		colcon1.setHalignment(HPos.LEFT);
+
+		ColumnConstraints colcon2 = new ColumnConstraints();
+		colcon2.setHgrow(Priority.ALWAYS);
+
+		textContainer = new GridPane();
+		textContainer.setHgap(10);
+		textContainer.setVgap(10);
+		textContainer.getColumnConstraints().addAll(colcon1, colcon2, new ColumnConstraints());
+		textContainer.add(targetLabel, 0, 0);
+		textContainer.add(findTarget, 1, 0, 2, 1);
+		textContainer.add(folderLabel, 0, 1);
+		textContainer.add(folder, 1, 1);
+		textContainer.add(browse, 2, 1);
+		textContainer.add(caseSensitive, 1, 2);
+
+		results = new ListView<>();
+		results.setPrefHeight(250);
+		results.setCellFactory(list -> new ListCell<FolderSearcher.Result>() {
+			@Override
+			protected void updateItem(FolderSearcher.Result result, boolean empty) {
+				super.updateItem(result, empty);
+				if (empty || result == null) {
+					setText(null);
+				} else {
+					setText(result.getFile().getPath() + ":" + (result.getLine() + 1) + ": " + result.getPreview());
+				}
+			}
+		});
+		results.setOnMouseClicked(e -> {
+			if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) {
+				openSelectedResult();
+			}
+		});
+		results.setOnKeyPressed(e -> {
+			if (e.getCode() == KeyCode.ENTER) {
+				openSelectedResult();
+			}
+		});
+		VBox.setVgrow(results, Priority.ALWAYS);
+
+		status = new Label();
+		status.setMaxWidth(Double.MAX_VALUE);
+		HBox.setHgrow(status, Priority.ALWAYS);
+
+		search = new Button("尋找(_F)");
+		search.setDefaultButton(true);
+		search.setDisable(true);
+		search.setOnAction(e -> search());
+
+		stop = new Button("停止(_S)");
+		stop.setDisable(true);
+		stop.setOnAction(e -> stopSearch());
+
+		cancel = new Button("關閉");
+		cancel.setCancelButton(true);
+		cancel.setOnAction(e -> Event.fireEvent(stage, new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST)));
+
+		buttonContainer = new HBox(10, status, search, stop, cancel);
+		buttonContainer.setAlignment(Pos.CENTER_RIGHT);
+
+		root = new VBox(10, textContainer, results, buttonContainer);
+		root.setPadding(new Insets(10));
+
+		scene = new Scene(root, 600, 400);
+
+		stage = new Stage();
+		stage.initOwner(owner);
+		stage.initStyle(StageStyle.UTILITY);
+		stage.setTitle("在資料夾中尋找");
+		stage.setMinHeight(300);
+		stage.setMinWidth(478);
+		stage.setScene(scene);
+		stage.setOnHidden(e -> stopSearch());
+		stage.setOnShown(e -> {
+			stage.setX(owner.getX() + owner.getWidth() / 2 - stage.getWidth() / 2);
+			stage.setY(owner.getY() + owner.getHeight() / 2 - stage.getHeight() / 2);
+		});
+	}
+
+	private void search() {
+		File directory = new File(folder.getText());
+		if (!directory.isDirectory()) {
+			status.setText("找不到資料夾 " + folder.getText());
+			return;
+		}
+
+		stopSearch();
+		results.getItems().clear();
+
+		// The results are listed as they are found
+		folderSearcher = new FolderSearcher(directory, findTarget.getText(), caseSensitive.isSelected(), found -> {
+			results.getItems().addAll(found);
+			status.setText("搜尋中... 共 " + results.getItems().size() + " 個符合");
+		});
+		folderSearcher.setOnSucceeded(e -> {
+			status.setText("共 " + folderSearcher.getValue() + " 個符合");
+			setSearching(false);
+		});
+		folderSearcher.setOnFailed(e -> {
+			status.setText("搜尋失敗");
+			setSearching(false);
+		});
+
+		status.setText("搜尋中...");
+		setSearching(true);
+
+		Thread thread = new Thread(folderSearcher);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void stopSearch() {
+		if (folderSearcher != null && folderSearcher.isRunning()) {
+			folderSearcher.cancel();
+			status.setText("已停止，共 " + results.getItems().size() + " 個符合");
+			setSearching(false);
+		}
+	}
+
+	private void setSearching(boolean searching) {
+		stop.setDisable(!searching);
+		updateSearchButton();
+	}
+
+	private void updateSearchButton() {
+		search.setDisable(findTarget.getText().isEmpty() || folder.getText().isEmpty());
+	}
+
+	private void openSelectedResult() {
+		FolderSearcher.Result result = results.getSelectionModel().getSelectedItem();
+		if (result != null) {
+			onOpen.accept(result);
+		}
+	}
+
+	public void show(String directory, String target) {
+		if (folder.getText().isEmpty()) {
+			folder.setText(directory);
+		}
+		if (!target.isEmpty()) {
+			findTarget.setText(target);
+		}
+		findTarget.requestFocus();
+		findTarget.selectAll();
+		stage.show();
+	}
+}
@@ -7,6 +7,8 @@ import javafx.scene.layout.*;
 import javafx.scene.Scene;
 import javafx.stage.*;
 
+import java.util.regex.PatternSyntaxException;
+
 public class FindReplaceDialog {
 
 	private Stage owner, stage;
@@ -14,15 +16,18 @@ public class FindReplaceDialog {
 
 	private AnchorPane root;
 	private GridPane textContainer;
-	private VBox buttonContainer;
+	private VBox buttonContainer, checkBoxContainer;
 	
 	private Label targetLabel, replaceAsLabel;
 	private TextField findTarget, replaceAs;
 	private Button findNext, replace, replaceAll, cancel;
-	private CheckBox caseSensitive;
-	private TextArea editor;
+	private CheckBox caseSensitive, regex;
+	private EditorTextArea editor;
+	private ChangeListener<IndexRange> selectionListener;
+	private TextSearcher searcher;
+	private RegexSearcher regexSearcher;
 
-	public FindReplaceDialog(Stage owner, TextArea editor) {
+	public FindReplaceDialog(Stage owner, EditorTextArea editor) {
 		this.owner = owner;
 		this.editor = editor;
 
@@ -84,34 +89,50 @@ public class FindReplaceDialog {
 		findNext.setMaxWidth(Double.MAX_VALUE);
 		findNext.setDefaultButton(true);
 		findNext.setDisable(true);
-		findNext.setOnAction(e -> {
-			if (!findNext(caseSensitive.isSelected())) {
-				showInfoDialog("找不到", null, "找不到 " + getLastFindedString());
+		findNext.setOnAction(Instrumentation.wrap("replace.findNext", e -> {
+			try {
+				if (!findNext(caseSensitive.isSelected())) {
+					showInfoDialog("找不到", null, "找不到 " + getLastFindedString());
+				}
+			} catch(PatternSyntaxException ex) {
+				showInfoDialog("規則運算式錯誤", null, ex.getDescription());
+			} catch(RegexSearcher.SearchTimeoutException ex) {
+				showInfoDialog("搜尋逾時", null, "搜尋 " + getLastFindedString() + " 的時間過長");
 			}
 			replace.setDisable(editor.getSelectedText().isEmpty());
-		});
+		}));
 
 		replace = new Button("取代(_R)");
 		replace.setMaxHeight(Double.MAX_VALUE);
 		replace.setMaxWidth(Double.MAX_VALUE);
 		replace.setDisable(true);
-		replace.setOnAction(e -> {
-			replace();
+		replace.setOnAction(Instrumentation.wrap("replace.replace", e -> {
+			try {
+				replace();
+			} catch(IllegalArgumentException ex) {
+				showInfoDialog("取代錯誤", null, ex.getMessage());
+			}
 			replace.setDisable(true);
-		});
+		}));
 
 		replaceAll = new Button("全部取代(_A)");
 		replaceAll.setMaxHeight(Double.MAX_VALUE);
 		replaceAll.setMaxWidth(Double.MAX_VALUE);
 		replaceAll.setDisable(true);
 		replaceAll.setOnAction(e -> {
-			int times = 0;
-			editor.positionCaret(0);
-			while (findNext(caseSensitive.isSelected())) {
-				replace();
-				times++;
+			try {
+				// Time the replacing alone, not the dialog telling the result
+				int times = Instrumentation.time("replace.replaceAll", () -> {
+					return regex.isSelected() ? replaceAllMatches(caseSensitive.isSelected()) : replaceAll(caseSensitive.isSelected());
+				});
+				showInfoDialog("完成", null, "一共取代 " + times + " 個");
+			} catch(PatternSyntaxException ex) {
+				showInfoDialog("規則運算式錯誤", null, ex.getDescription());
+			} catch(RegexSearcher.SearchTimeoutException ex) {
+				showInfoDialog("搜尋逾時", null, "搜尋 " + getLastFindedString() + " 的時間過長");
+			} catch(IllegalArgumentException ex) {
+				showInfoDialog("取代錯誤", null, ex.getMessage());
 			}
-			showInfoDialog("完成", null, "一共取代 " + times + " 個");
 		});
 
 		cancel = new Button("取消");
@@ -127,18 +148,22 @@ public class FindReplaceDialog {
 		AnchorPane.setTopAnchor(buttonContainer, 10.0);
 
 		caseSensitive = new CheckBox("大小寫視為相異(_C)");
-		caseSensitive.setLayoutX(14);
-		caseSensitive.setLayoutY(199);
-		AnchorPane.setBottomAnchor(caseSensitive, 10.0);
-		AnchorPane.setLeftAnchor(caseSensitive, 10.0);
-		AnchorPane.setTopAnchor(caseSensitive, 199.0);
 
-		root = new AnchorPane(textContainer, buttonContainer, caseSensitive);
+		regex = new CheckBox("規則運算式(_E)");
+
+		checkBoxContainer = new VBox(10, caseSensitive, regex);
+		checkBoxContainer.setLayoutX(14);
+		checkBoxContainer.setLayoutY(199);
+		AnchorPane.setBottomAnchor(checkBoxContainer, 10.0);
+		AnchorPane.setLeftAnchor(checkBoxContainer, 10.0);
+		AnchorPane.setTopAnchor(checkBoxContainer, 199.0);
+
+		root = new AnchorPane(textContainer, buttonContainer, checkBoxContainer);
 		root.setPadding(new Insets(10));
 
 		scene = new Scene(root);
 
-		ChangeListener<IndexRange> selectionProperty = (obs, oldValue, newValue) -> replace.setDisable(true);
+		selectionListener = (obs, oldValue, newValue) -> replace.setDisable(true);
 
 		stage = new Stage();
 		stage.initOwner(owner);
@@ -146,9 +171,9 @@ public class FindReplaceDialog {
 		stage.setTitle("取代");
 		stage.setScene(scene);
 		stage.setMinWidth(486);
-		stage.setMinHeight(247);
+		stage.setMinHeight(280);
 		stage.setOnShown(e -> {
-			editor.selectionProperty().addListener(selectionProperty);
+			editor.selectionProperty().addListener(selectionListener);
 
 			findTarget.requestFocus();
 			findTarget.selectAll();
@@ -156,24 +181,90 @@ public class FindReplaceDialog {
 			stage.setX(owner.getX() + owner.getWidth() / 2 - stage.getWidth() / 2);
 			stage.setY(owner.getY() + owner.getHeight() / 2 - stage.getHeight() / 2);
 		});
-		stage.setOnHidden(e -> editor.selectionProperty().removeListener(selectionProperty));
+		stage.setOnHidden(e -> editor.selectionProperty().removeListener(selectionListener));
+	}
+
+	// Replace in another editor, such as the one of the selected tab
+	public void setEditor(EditorTextArea editor) {
+		if (stage.isShowing()) {
+			this.editor.selectionProperty().removeListener(selectionListener);
+			editor.selectionProperty().addListener(selectionListener);
+		}
+		this.editor = editor;
+		replace.setDisable(true);
 	}
 
 	public boolean findNext(boolean isCaseSensitive) {
-		String content = isCaseSensitive ? editor.getText() : editor.getText().toLowerCase();
-		String target = isCaseSensitive ? findTarget.getText() : findTarget.getText().toLowerCase();
-		int targetIndex = content.indexOf(target, editor.getCaretPosition());
+		if (regex.isSelected()) {
+			return findNextMatch(isCaseSensitive);
+		}
+
+		TextSearcher searcher = getSearcher(isCaseSensitive);
+		int targetIndex = searcher.indexOf(editor.getDocument(), editor.getCaretPosition());
 
 		if (targetIndex != -1) {
-			editor.selectRange(targetIndex, targetIndex + target.length());
+			editor.selectRange(targetIndex, targetIndex + searcher.getLength());
 			return true;
 		} else {
 			return false;
 		}
 	}
 
+	private boolean findNextMatch(boolean isCaseSensitive) {
+		RegexSearcher searcher = getRegexSearcher(isCaseSensitive);
+
+		// Step over an empty match at the caret, it would be found again and again
+		int from = editor.getCaretPosition();
+		boolean found = searcher.find(editor.getDocument(), from);
+		if (found && searcher.end() == from) {
+			found = searcher.find(editor.getDocument(), from + 1);
+		}
+
+		if (found) {
+			editor.selectRange(searcher.start(), searcher.end());
+		}
+		return found;
+	}
+
+	// Replace the matches in a single edit, the history keeps only the matches and not a
+	// copy of the whole replaced text
+	private int replaceAll(boolean isCaseSensitive) {
+		Replacements replacements = getSearcher(isCaseSensitive).findReplacements(editor.getDocument(), replaceAs.getText());
+		editor.replaceAll(replacements);
+		return replacements.size();
+	}
+
+	private int replaceAllMatches(boolean isCaseSensitive) {
+		Replacements replacements = getRegexSearcher(isCaseSensitive).findReplacements(editor.getDocument(), replaceAs.getText());
+		editor.replaceAll(replacements);
+		return replacements.size();
+	}
+
+	private RegexSearcher getRegexSearcher(boolean isCaseSensitive) {
+		if (regexSearcher == null || !regexSearcher.matches(findTarget.getText(), isCaseSensitive)) {
+			regexSearcher = new RegexSearcher(findTarget.getText(), isCaseSensitive);
+		}
+		return regexSearcher;
+	}
+
+	private TextSearcher getSearcher(boolean isCaseSensitive) {
+		// Reuse the skip tables while the target stays the same
+		if (searcher == null || !searcher.matches(findTarget.getText(), isCaseSensitive)) {
+			searcher = new TextSearcher(findTarget.getText(), isCaseSensitive);
+		}
+		return searcher;
+	}
+
 	private void replace() {
-		editor.replaceText(editor.getSelection(), replaceAs.getText());
+		IndexRange selection = editor.getSelection();
+		String replacement = replaceAs.getText();
+
+		// The selection is the last match, so its groups can be substituted
+		if (regex.isSelected() && regexSearcher != null && regexSearcher.hasMatch()
+			&& regexSearcher.start() == selection.getStart() && regexSearcher.end() == selection.getEnd()) {
+			replacement = regexSearcher.getReplacement(replacement);
+		}
+		editor.replaceText(selection, replacement);
 	}
 
 	public String getLastFindedString() {
@@ -0,0 +1,299 @@
+package fxeditor;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class FolderSearcher extends Task<Integer> {
+
+	private static final int WINDOW_SIZE = 1024 * 1024;
+	private static final int BINARY_CHECK_SIZE = 8 * 1024;
+	private static final int MAX_PREVIEW_LENGTH = 200;
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final int MAX_RESULTS = 10000;
+
+	private File directory;
+	private String target;
+	private boolean isCaseSensitive;
+	private Consumer<List<Result>> consumer;
+
+	private AtomicInteger resultCount = new AtomicInteger();
+
+	// Every thread of the pool reads the files into a window of its own
+	private ThreadLocal<byte[]> windows = ThreadLocal.withInitial(() -> new byte[WINDOW_SIZE]);
+
+	// The target encoded in the charsets of the files searched so far
+	private Map<Charset, byte[]> patterns = new ConcurrentHashMap<>();
+
+	// The results not yet handed to the consumer on the FX thread
+	private List<Result> pending = new ArrayList<>();
+	private boolean flushScheduled;
+
+	public FolderSearcher(File directory, String target, boolean isCaseSensitive, Consumer<List<Result>> consumer) {
+		this.directory = directory;
+		this.target = target;
+		this.isCaseSensitive = isCaseSensitive;
+		this.consumer = consumer;
+	}
+
+	@Override
+	protected Integer call() throws InterruptedException, ExecutionException {
+		if (target.isEmpty()) {
+			return 0;
+		}
+
+		// Every directory and file is a task of its own, the pool keeps all cores busy
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			pool.submit(new DirectorySearch(directory)).get();
+		} catch(CancellationException e) {
+			// The search was stopped
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return Math.min(resultCount.get(), MAX_RESULTS);
+	}
+
+	private boolean isStopped() {
+		return isCancelled() || resultCount.get() >= MAX_RESULTS;
+	}
+
+	private void searchFile(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			int line = 0;
+			long lineStart = 0;
+			boolean afterReturn = false;
+
+			// Each file is searched in its own encoding
+			ByteBuffer sample = ByteBuffer.allocate(BINARY_CHECK_SIZE);
+			while (sample.hasRemaining() && channel.read(sample, sample.position()) > 0) {
+				// Read until the sample is full or the file ends
+			}
+			// UTF-16 text has zero bytes too, only the other files are checked for them
+			Charset charset = FileEncoding.detect(sample.array(), sample.position()).getCharset();
+			boolean isUtf16 = charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE);
+			if (!isUtf16 && isBinary(sample)) {
+				return;
+			}
+			byte[] pattern = patterns.computeIfAbsent(charset, target::getBytes);
+
+			// Lines and matches are found by code unit, a UTF-16 one takes two bytes
+			int unitWidth = isUtf16 ? 2 : 1;
+			boolean isBigEndian = charset.equals(StandardCharsets.UTF_16BE);
+			byte[] window = windows.get();
+
+			// Consecutive windows overlap by the pattern length so no match is cut in half
+			while (position + pattern.length <= size && !isStopped()) {
+				ByteBuffer buffer = ByteBuffer.wrap(window, 0, (int) Math.min(window.length, size - position));
+				while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+					// Read until the window is full or the file ends
+				}
+				int count = buffer.position();
+				boolean isLast = position + count >= size;
+				count -= count % unitWidth;
+
+				int last = count - pattern.length;
+				int end = isLast ? count : last + unitWidth;
+				for (int i = 0; i < end && !isStopped(); i += unitWidth) {
+					int unit = getCodeUnit(window, i, unitWidth, isBigEndian);
+
+					// A CR ends a line unless a LF follows it, the way the editor reads the file
+					if (afterReturn && unit != '\n') {
+						line++;
+						lineStart = position + i;
+					}
+					afterReturn = unit == '\r';
+
+					if (i <= last && matches(window, i, pattern, unitWidth, isBigEndian)) {
+						addResult(createResult(channel, file, charset, pattern, line, lineStart, position + i));
+					}
+					if (unit == '\n') {
+						line++;
+						lineStart = position + i + unitWidth;
+					}
+				}
+
+				if (isLast || end <= 0) {
+					break;
+				}
+				position += end;
+			}
+		} catch(IOException e) {
+			// Skip the files which can't be read
+		}
+	}
+
+	// A file with a NUL byte near its beginning is taken as binary
+	private boolean isBinary(ByteBuffer sample) {
+		for (int i = 0; i < sample.position(); i++) {
+			if (sample.get(i) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int getCodeUnit(byte[] bytes, int offset, int unitWidth, boolean isBigEndian) {
+		int first = bytes[offset] & 0xFF;
+		if (unitWidth == 1) {
+			return first;
+		}
+		int second = bytes[offset + 1] & 0xFF;
+		return isBigEndian ? first << 8 | second : second << 8 | first;
+	}
+
+	private boolean matches(byte[] bytes, int offset, byte[] pattern, int unitWidth, boolean isBigEndian) {
+		for (int i = 0; i < pattern.length; i += unitWidth) {
+			int a = getCodeUnit(bytes, offset + i, unitWidth, isBigEndian);
+			int b = getCodeUnit(pattern, i, unitWidth, isBigEndian);
+			if (a != b && (isCaseSensitive || toLowerCase(a, unitWidth) != toLowerCase(b, unitWidth))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// A UTF-16 code unit is a character of its own, in other encodings only ASCII letters
+	// are folded since other bytes may be part of a multi-byte character
+	private int toLowerCase(int unit, int unitWidth) {
+		if (unitWidth == 2) {
+			return Character.toLowerCase((char) unit);
+		}
+		return (unit >= 'A' && unit <= 'Z') ? unit + 32 : unit;
+	}
+
+	private Result createResult(FileChannel channel, File file, Charset charset, byte[] pattern, int line, long lineStart, long position) throws IOException {
+		int prefixLength = (int) Math.min(position - lineStart, MAX_LINE_LENGTH);
+		ByteBuffer bytes = ByteBuffer.allocate(prefixLength + pattern.length + MAX_PREVIEW_LENGTH);
+		long start = position - prefixLength;
+		while (bytes.hasRemaining() && channel.read(bytes, start + bytes.position()) > 0) {
+			// Read until the buffer is full or the file ends
+		}
+
+		String prefix = new String(bytes.array(), 0, prefixLength, charset);
+		String rest = new String(bytes.array(), prefixLength, bytes.position() - prefixLength, charset);
+		for (int i = 0; i < rest.length(); i++) {
+			if (rest.charAt(i) == '\n' || rest.charAt(i) == '\r') {
+				rest = rest.substring(0, i);
+				break;
+			}
+		}
+
+		String preview = (prefix.length() > MAX_PREVIEW_LENGTH) ? prefix.substring(prefix.length() - MAX_PREVIEW_LENGTH) : prefix;
+		preview = (preview + rest).trim();
+
+		// The column is only known when the line start was read
+		int column = (position - lineStart <= MAX_LINE_LENGTH) ? prefix.length() : 0;
+
+		return new Result(file, line, column, target.length(), preview);
+	}
+
+	private void addResult(Result result) {
+		if (resultCount.getAndIncrement() >= MAX_RESULTS) {
+			return;
+		}
+
+		synchronized (this) {
+			pending.add(result);
+			if (!flushScheduled) {
+				flushScheduled = true;
+				Platform.runLater(this::flush);
+			}
+		}
+	}
+
+	private void flush() {
+		List<Result> results;
+		synchronized (this) {
+			results = pending;
+			pending = new ArrayList<>();
+			flushScheduled = false;
+		}
+
+		if (!isCancelled()) {
+			consumer.accept(results);
+		}
+	}
+
+	private class DirectorySearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private File directory;
+
+		private DirectorySearch(File directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute() {
+			File[] files = directory.listFiles();
+			if (files == null || isStopped()) {
+				return;
+			}
+
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			for (File file : files) {
+				// A link may lead back to a directory above, the search would never end
+				if (Files.isSymbolicLink(file.toPath())) {
+					continue;
+				}
+				if (file.isDirectory()) {
+					tasks.add(new DirectorySearch(file));
+				} else if (file.isFile()) {
+					tasks.add(ForkJoinTask.adapt(() -> searchFile(file)));
+				}
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	public static class Result {
+		private final File file;
+		private final int line;
+		private final int column;
+		private final int length;
+		private final String preview;
+
+		private Result(File file, int line, int column, int length, String preview) {
+			this.file = file;
+			this.line = line;
+			this.column = column;
+			this.length = length;
+			this.preview = preview;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		// The line of the match, counting from 0
+		public int getLine() {
+			return line;
+		}
+
+		// The column of the match in characters, counting from 0
+		public int getColumn() {
+			return column;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public String getPreview() {
+			return preview;
+		}
+	}
+}
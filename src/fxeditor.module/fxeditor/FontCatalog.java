@@ -0,0 +1,183 @@
+package fxeditor;
+
+import javafx.concurrent.Task;
+import javafx.scene.text.Font;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class FontCatalog extends Task<Map<String, Set<String>>> {
+
+	private static final int MAGIC = 0x46584643;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private File cacheFile;
+
+	// Finds the styles of every font family. The catalog cached by an earlier run is the
+	// value of the task first, the task only walks the fonts again when the font
+	// directories have changed since.
+	public FontCatalog() {
+		cacheFile = new File(new File(System.getProperty("user.home"), ".fxeditor"), "fonts");
+	}
+
+	@Override
+	protected Map<String, Set<String>> call() {
+		long key = getFontDirectoryKey();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() == MAGIC) {
+				long cachedKey = in.readLong();
+				Map<String, Set<String>> cached = readCatalog(in);
+				if (cachedKey == key) {
+					return cached;
+				}
+
+				// Show the fonts known so far while they are looked up again
+				updateValue(cached);
+			}
+		} catch(IOException e) {
+			// There is no usable cache yet
+		}
+
+		Map<String, Set<String>> catalog = createFontFamilyStyleMap();
+		writeCache(key, catalog);
+		return catalog;
+	}
+
+	Map<String, Set<String>> createFontFamilyStyleMap() {
+		Map<String, Set<String>> familyStyleMap = new TreeMap<>();
+
+		// Iterate each font family
+		for (String family : Font.getFamilies()) {
+			Set<String> styles = new TreeSet<>();
+			Set<String> filter = new HashSet<>(Font.getFontNames(family));
+
+			// Iterate each font name
+			for (String name : filter) {
+				boolean isBold = false;
+				boolean isItalic = false;
+				String[] words = name.contains(" ") ? name.toLowerCase().split(" ") : name.toLowerCase().split("-");
+
+				// Iterate each word to detect the font style
+				for (String word : words) {
+					isBold = word.equals("bold") || isBold;
+					isItalic = (word.equals("it") || word.equals("italic") || word.equals("oblique") || isItalic);
+				}
+
+				// Detect the font style
+				if (isBold && isItalic) {
+					styles.add("Bold Italic");
+				} else if (!isBold && isItalic) {
+					styles.add("Italic");
+				} else if (isBold && !isItalic) {
+					styles.add("Bold");
+				} else {
+					styles.add("Regular");
+				}
+			}
+
+			familyStyleMap.put(family, styles);
+		}
+
+		return familyStyleMap;
+	}
+
+	// A hash of the font directories and their modification times, a font installed or
+	// removed changes the time of its directory
+	private long getFontDirectoryKey() {
+		long key = hash(FNV_OFFSET_BASIS, System.getProperty("javafx.runtime.version", ""));
+		for (File directory : getFontDirectories()) {
+			key = hashDirectory(key, directory);
+		}
+		return key;
+	}
+
+	private long hashDirectory(long key, File directory) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return key;
+		}
+
+		key = hash(key, directory.getPath());
+		key = (key ^ directory.lastModified()) * FNV_PRIME;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				key = hashDirectory(key, file);
+			}
+		}
+		return key;
+	}
+
+	private List<File> getFontDirectories() {
+		String os = System.getProperty("os.name").toLowerCase();
+		String home = System.getProperty("user.home");
+		List<File> directories = new ArrayList<>();
+
+		if (os.contains("win")) {
+			directories.add(new File(System.getenv().getOrDefault("WINDIR", "C:\\Windows"), "Fonts"));
+			if (System.getenv("LOCALAPPDATA") != null) {
+				directories.add(new File(System.getenv("LOCALAPPDATA"), "Microsoft\\Windows\\Fonts"));
+			}
+		} else if (os.contains("mac")) {
+			directories.add(new File("/System/Library/Fonts"));
+			directories.add(new File("/Library/Fonts"));
+			directories.add(new File(home, "Library/Fonts"));
+		} else {
+			directories.add(new File("/usr/share/fonts"));
+			directories.add(new File("/usr/local/share/fonts"));
+			directories.add(new File(home, ".fonts"));
+			directories.add(new File(home, ".local/share/fonts"));
+		}
+
+		return directories;
+	}
+
+	private Map<String, Set<String>> readCatalog(DataInputStream in) throws IOException {
+		Map<String, Set<String>> catalog = new TreeMap<>();
+		int familyCount = in.readInt();
+		for (int i = 0; i < familyCount; i++) {
+			String family = in.readUTF();
+			Set<String> styles = new TreeSet<>();
+			int styleCount = in.readInt();
+			for (int j = 0; j < styleCount; j++) {
+				styles.add(in.readUTF());
+			}
+			catalog.put(family, styles);
+		}
+		return catalog;
+	}
+
+	// Write a temporary file first, so another editor never reads half a cache
+	private void writeCache(long key, Map<String, Set<String>> catalog) {
+		File temp = new File(cacheFile.getPath() + ".tmp");
+		try {
+			cacheFile.getParentFile().mkdirs();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeLong(key);
+				out.writeInt(catalog.size());
+				for (Map.Entry<String, Set<String>> entry : catalog.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().size());
+					for (String style : entry.getValue()) {
+						out.writeUTF(style);
+					}
+				}
+			}
+			Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			// The fonts are just looked up again next time
+			temp.delete();
+		}
+	}
+
+	// FNV-1a over the characters, continuing from the given hash
+	private static long hash(long hash, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+		}
+		return hash;
+	}
+}
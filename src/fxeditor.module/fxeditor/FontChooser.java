@@ -14,6 +14,8 @@ import java.util.*;
 
 public class FontChooser {
 
+	private static final KeyCombination SELECT_ALL = new KeyCodeCombination(KeyCode.A, KeyCombination.SHORTCUT_DOWN);
+
 	private Stage owner, stage;
 	private Scene scene;
 
@@ -29,12 +31,14 @@ public class FontChooser {
 	private ListView<Integer> fontSize;
 	private Button ok, cancel;
 
-	private Map<String, Set<String>> familyStyleMap;
+	private Map<String, Set<String>> familyStyleMap = new TreeMap<>();
+	private PrefixIndex familyIndex = new PrefixIndex(Collections.emptyList());
+	private String familyFilter = "";
 	private Font currentFont;
 
-	public FontChooser(Stage owner) {
+	// The catalog is walked from the start of the editor, the fonts found so far are listed
+	public FontChooser(Stage owner, FontCatalog fontCatalog) {
 		this.owner = owner;
-		familyStyleMap = createFontFamilyStyleMap();
 
 		fontFamilyTextField = new TextField();
 		fontFamilyTextField.focusedProperty().addListener((obs, oldValue, newValue) -> {
@@ -42,35 +46,36 @@ public class FontChooser {
 				if (newValue) {
 					fontFamilyTextField.selectAll();
 				} else {
-					if(isFontFamilyValid()) fontFamily.getSelectionModel().select(fontFamilyTextField.getText());
+					selectTypedFamily();
 				}
 			});
 		});
 		fontFamilyTextField.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
 			if (e.getCode() == KeyCode.ENTER) {
-				if(isFontFamilyValid()) fontFamily.getSelectionModel().select(fontFamilyTextField.getText());
+				selectTypedFamily();
 			}
 		});
 		fontFamilyTextField.addEventFilter(KeyEvent.KEY_RELEASED, e -> {
-			String text = fontFamilyTextField.getText();
-
-			for (String family : familyStyleMap.keySet()) {
-				if (e.getCode().isLetterKey() || e.getCode().isWhitespaceKey() || e.getCode() == KeyCode.MINUS) {
-					KeyCombination selectAll = new KeyCodeCombination(KeyCode.A, KeyCombination.SHORTCUT_DOWN);
-					if (selectAll.match(e)) {
-						fontFamilyTextField.selectAll();
-						e.consume();
-						break;
-					}
-
-					if (!text.isEmpty() && family.startsWith(text)) {
-						String rest = family.substring(text.length());
-
-						fontFamilyTextField.appendText(rest);
-						fontFamilyTextField.selectRange(family.length(), text.length());
-						e.consume();
-						break;
-					}		
+			if (SELECT_ALL.match(e)) {
+				fontFamilyTextField.selectAll();
+				e.consume();
+				return;
+			}
+
+			// Only the typed part of the text counts, not the completion selected after it
+			String text = fontFamilyTextField.getText(0, fontFamilyTextField.getSelection().getStart());
+			if (e.getCode() == KeyCode.BACK_SPACE || e.getCode() == KeyCode.DELETE) {
+				filterFamilies(fontFamilyTextField.getText());
+			} else if (e.getCode().isLetterKey() || e.getCode().isDigitKey() || e.getCode().isWhitespaceKey() || e.getCode() == KeyCode.MINUS) {
+				filterFamilies(text);
+
+				// Complete the family ignoring case, the rest of it stays selected
+				boolean atEnd = fontFamilyTextField.getSelection().getEnd() == fontFamilyTextField.getLength();
+				String family = (text.isEmpty() || !atEnd) ? null : familyIndex.complete(text);
+				if (family != null) {
+					fontFamilyTextField.setText(text + family.substring(text.length()));
+					fontFamilyTextField.selectRange(family.length(), text.length());
+					e.consume();
 				}
 			}
 		});
@@ -120,8 +125,11 @@ public class FontChooser {
 		fontSizeLabel.setLabelFor(fontSizeTextField);
 
 		fontFamily = new ListView<>();
-		fontFamily.setItems(createFontFamilyList());
 		fontFamily.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> {
+			// The selection is cleared when the catalog is replaced
+			if (newValue == null) {
+				return;
+			}
 			fontFamilyTextField.setText(newValue);
 			fontStyle.setItems(createFontStyleList(newValue));
 			sampleLabel.setFont(createFont());
@@ -255,6 +263,8 @@ public class FontChooser {
 			fontStyleTextField.setText(style);
 			fontSizeTextField.setText(size.toString());
 
+			filterFamilies("");
+
 			fontFamily.scrollTo(family);
 			fontFamily.getSelectionModel().select(family);
 
@@ -267,6 +277,15 @@ public class FontChooser {
 			stage.setX(owner.getX() + owner.getWidth() / 2 - stage.getWidth() / 2);
 			stage.setY(owner.getY() + owner.getHeight() / 2 - stage.getHeight() / 2);
 		});
+
+		if (fontCatalog.getValue() != null) {
+			setFamilyStyleMap(fontCatalog.getValue());
+		}
+		fontCatalog.valueProperty().addListener((obs, oldValue, newValue) -> {
+			if (newValue != null) {
+				setFamilyStyleMap(newValue);
+			}
+		});
 	}
 
 	public Font showAndWait(Font currentFont) {
@@ -276,47 +295,22 @@ public class FontChooser {
 		return this.currentFont;
 	}
 
-	private ObservableList<String> createFontFamilyList() {
-		List<String> families = Font.getFamilies();
-		return FXCollections.observableArrayList(families);
-	}
-
-	private Map<String, Set<String>> createFontFamilyStyleMap() {
-		Map<String, Set<String>> familyStyleMap = new TreeMap<>();
+	private void setFamilyStyleMap(Map<String, Set<String>> familyStyleMap) {
+		String family = fontFamilyTextField.getText();
+		String style = fontStyleTextField.getText();
 
-		// Iterate each font family
-		for (String family : createFontFamilyList()) {
-			Set<String> styles = new TreeSet<>();
-			Set<String> filter = new HashSet<>(Font.getFontNames(family));
+		this.familyStyleMap = familyStyleMap;
+		familyIndex = new PrefixIndex(familyStyleMap.keySet());
+		familyFilter = "";
+		fontFamily.setItems(FXCollections.observableList(familyIndex.getNames()));
 
-			// Iterate each font name
-			for (String name : filter) {
-				boolean isBold = false;
-				boolean isItalic = false;
-				String[] words = name.contains(" ") ? name.toLowerCase().split(" ") : name.toLowerCase().split("-");
-
-				// Iterate each word to detect the font style
-				for (String word : words) {
-					isBold = word.equals("bold") || isBold;
-					isItalic = (word.equals("it") || word.equals("italic") || word.equals("oblique") || isItalic);
-				}
-
-				// Detect the font style
-				if (isBold && isItalic) {
-					styles.add("Bold Italic");
-				} else if (!isBold && isItalic) {
-					styles.add("Italic");
-				} else if (isBold && !isItalic) {
-					styles.add("Bold");
-				} else {
-					styles.add("Regular");
-				}
-			}
-
-			familyStyleMap.put(family, styles);
+		// Keep the font chosen so far when the catalog arrives while the chooser is open
+		family = familyIndex.getName(family);
+		if (family != null) {
+			fontFamily.getSelectionModel().select(family);
+			fontFamily.scrollTo(family);
+			fontStyle.getSelectionModel().select(style);
 		}
-
-		return familyStyleMap;
 	}
 
 	private Font createFont() {
@@ -343,13 +337,22 @@ public class FontChooser {
 		return Font.font(family, FontWeight.findByName(weight), FontPosture.findByName(posture), size);
 	}
 
-	private boolean isFontFamilyValid() {
-		for (String family : familyStyleMap.keySet()) {
-			if (fontFamilyTextField.getText().equals(family)) {
-				return true;
-			}
+	// Select the family typed in the text field, ignoring case
+	private void selectTypedFamily() {
+		String family = familyIndex.getName(fontFamilyTextField.getText());
+		if (family != null) {
+			filterFamilies("");
+			fontFamily.getSelectionModel().select(family);
+			fontFamily.scrollTo(family);
+		}
+	}
+
+	// Only list the families starting with the prefix, ignoring case
+	private void filterFamilies(String prefix) {
+		if (!prefix.equalsIgnoreCase(familyFilter)) {
+			familyFilter = prefix;
+			fontFamily.setItems(FXCollections.observableList(familyIndex.getNamesStartingWith(prefix)));
 		}
-		return false;
 	}
 
 	private boolean isFontStyleValid() {
@@ -366,7 +369,7 @@ public class FontChooser {
 			int size = Integer.parseInt(fontSizeTextField.getText());
 			return size > 0;
 		} catch(NumberFormatException e){
-			e.printStackTrace();
+			// Not a number
 			return false;
 		}
 	}
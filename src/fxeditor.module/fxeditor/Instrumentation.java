@@ -0,0 +1,259 @@
+package fxeditor;
+
+import javafx.beans.value.ChangeListener;
+import javafx.event.*;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Times the event handlers and listeners, and the layout passes of the pulses, when the
+// editor runs with -Dfxeditor.instrument=true. Otherwise nothing is wrapped or recorded.
+public class Instrumentation {
+
+	private static final boolean ENABLED = Boolean.getBoolean("fxeditor.instrument");
+
+	// Every metric keeps its most recent samples, and counts all samples in buckets of
+	// powers of two microseconds
+	private static final int RECENT_SAMPLES = 256;
+	private static final int BUCKETS = 32;
+
+	private static Map<String, Metric> metrics = new TreeMap<>();
+	private static ThreadAllocations allocations;
+	private static long pulseStart;
+
+	static {
+		// jdk.management is optional, the allocations are only recorded when it is in the
+		// runtime, such as with --add-modules jdk.management
+		if (ENABLED && ModuleLayer.boot().findModule("jdk.management").isPresent()) {
+			allocations = ThreadAllocations.create();
+		}
+	}
+
+	private Instrumentation() {
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	// A handler recording how long the given one takes. A handler which opens a modal
+	// dialog includes the time the dialog is open.
+	public static <T extends Event> EventHandler<T> wrap(String name, EventHandler<T> handler) {
+		if (!ENABLED || handler == null) {
+			return handler;
+		}
+		return e -> time(name, () -> handler.handle(e));
+	}
+
+	public static <T> ChangeListener<T> wrapListener(String name, ChangeListener<T> listener) {
+		if (!ENABLED) {
+			return listener;
+		}
+		return (obs, oldValue, newValue) -> time(name, () -> listener.changed(obs, oldValue, newValue));
+	}
+
+	// Time every item of the menus, named after the menu and the item
+	public static void wrapMenus(MenuBar menuBar) {
+		if (!ENABLED) {
+			return;
+		}
+		for (Menu menu : menuBar.getMenus()) {
+			for (MenuItem item : menu.getItems()) {
+				if (item.getOnAction() != null) {
+					item.setOnAction(wrap("menu." + removeMnemonic(menu.getText()) + "." + removeMnemonic(item.getText()), item.getOnAction()));
+				}
+			}
+		}
+	}
+
+	// Time the CSS and layout pass of every pulse of the scene
+	public static void wrapPulses(Scene scene) {
+		if (!ENABLED) {
+			return;
+		}
+		scene.addPreLayoutPulseListener(() -> pulseStart = System.nanoTime());
+		scene.addPostLayoutPulseListener(() -> {
+			if (pulseStart != 0) {
+				record("pulse.layout", System.nanoTime() - pulseStart, -1);
+				pulseStart = 0;
+			}
+		});
+	}
+
+	public static void time(String name, Runnable action) {
+		if (!ENABLED) {
+			action.run();
+			return;
+		}
+
+		long bytes = getAllocatedBytes();
+		long start = System.nanoTime();
+		try {
+			action.run();
+		} finally {
+			long nanos = System.nanoTime() - start;
+			record(name, nanos, (bytes != -1) ? getAllocatedBytes() - bytes : -1);
+		}
+	}
+
+	public static <T> T time(String name, Supplier<T> action) {
+		if (!ENABLED) {
+			return action.get();
+		}
+
+		List<T> result = new ArrayList<>(1);
+		time(name, () -> {
+			result.add(action.get());
+		});
+		return result.get(0);
+	}
+
+	// Record a sample taken elsewhere, such as the run of a background task. The allocated
+	// bytes are -1 when unknown.
+	public static synchronized void record(String name, long nanos, long bytes) {
+		if (!ENABLED) {
+			return;
+		}
+		metrics.computeIfAbsent(name, key -> new Metric()).add(nanos, bytes);
+	}
+
+	public static synchronized void clear() {
+		metrics.clear();
+	}
+
+	public static synchronized String report() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-40s %8s %10s %10s %10s %10s %12s%n", "name", "count", "mean ms", "p50 ms", "p99 ms", "max ms", "alloc/call"));
+		for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+			Metric metric = entry.getValue();
+			long[] recent = metric.getRecentNanos();
+			report.append(String.format("%-40s %8d %10.3f %10.3f %10.3f %10.3f %12s%n",
+				entry.getKey(), metric.count, millis(metric.totalNanos / metric.count),
+				millis(percentile(recent, 50)), millis(percentile(recent, 99)), millis(metric.maxNanos),
+				(metric.allocationCount > 0) ? formatBytes(metric.totalBytes / metric.allocationCount) : "-"));
+		}
+
+		report.append(String.format("%nhistogram (count per duration)%n"));
+		for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+			report.append(String.format("%-40s", entry.getKey()));
+			long[] buckets = entry.getValue().buckets;
+			for (int i = 0; i < buckets.length; i++) {
+				if (buckets[i] > 0) {
+					report.append(" <").append(formatMicros(1L << (i + 1))).append(':').append(buckets[i]);
+				}
+			}
+			report.append(System.lineSeparator());
+		}
+
+		return report.toString();
+	}
+
+	public static void dump(File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(report());
+		}
+	}
+
+	private static long getAllocatedBytes() {
+		return (allocations != null) ? allocations.getAllocatedBytes() : -1;
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static String formatMicros(long micros) {
+		if (micros >= 1_000_000) {
+			return micros / 1_000_000 + "s";
+		} else if (micros >= 1000) {
+			return micros / 1000 + "ms";
+		} else {
+			return micros + "us";
+		}
+	}
+
+	private static String formatBytes(long bytes) {
+		if (bytes >= 1024 * 1024) {
+			return bytes / (1024 * 1024) + " MB";
+		} else if (bytes >= 1024) {
+			return bytes / 1024 + " KB";
+		} else {
+			return bytes + " B";
+		}
+	}
+
+	private static String removeMnemonic(String text) {
+		return text.replaceAll("\\(_.\\)|_|\\.\\.\\.", "");
+	}
+
+	// Only loaded once jdk.management is known to be there
+	private static class ThreadAllocations {
+		private com.sun.management.ThreadMXBean threads;
+
+		private ThreadAllocations(com.sun.management.ThreadMXBean threads) {
+			this.threads = threads;
+		}
+
+		// Null if the virtual machine can't count the bytes allocated by a thread
+		private static ThreadAllocations create() {
+			if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+				return null;
+			}
+
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!threads.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			threads.setThreadAllocatedMemoryEnabled(true);
+			return new ThreadAllocations(threads);
+		}
+
+		private long getAllocatedBytes() {
+			return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	private static class Metric {
+		private long count;
+		private long totalNanos;
+		private long maxNanos;
+		private long totalBytes;
+		private long allocationCount;
+		private long[] buckets = new long[BUCKETS];
+
+		// A ring of the most recent durations
+		private long[] recent = new long[RECENT_SAMPLES];
+
+		private void add(long nanos, long bytes) {
+			recent[(int)(count % RECENT_SAMPLES)] = nanos;
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			if (bytes >= 0) {
+				totalBytes += bytes;
+				allocationCount++;
+			}
+
+			long micros = Math.max(1, nanos / 1000);
+			buckets[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))]++;
+		}
+
+		private long[] getRecentNanos() {
+			long[] nanos = Arrays.copyOf(recent, (int) Math.min(count, RECENT_SAMPLES));
+			Arrays.sort(nanos);
+			return nanos;
+		}
+	}
+}
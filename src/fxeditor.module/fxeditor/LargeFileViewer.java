@@ -0,0 +1,534 @@
+package fxeditor;
+
+import javafx.application.Platform;
+import javafx.beans.property.*;
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.*;
+import javafx.scene.control.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.Arrays;
+import java.util.function.*;
+
+public class LargeFileViewer extends ListView<String> {
+
+	private static final int LINES_PER_CHECKPOINT = 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private File source;
+	private MappedFile file;
+	private Charset charset;
+	private Lines lines = new Lines();
+	private Task<Void> indexer, follower;
+	private Task<Boolean> finder;
+
+	// Line breaks are found by their code unit, which takes two bytes in UTF-16
+	private int unitWidth;
+	private boolean isBigEndian;
+
+	// The start position of every LINES_PER_CHECKPOINT-th line, written by the indexer
+	private long[] checkpoints = new long[1024];
+	private int checkpointCount;
+	private int indexedLines;
+	private long indexedSize;
+
+	// How far the file has been scanned, used by the indexer and then the follower
+	private LineScanner scanner = new LineScanner(true);
+
+	// The last line start found, so reading consecutive lines doesn't rescan
+	private LineScanner lineScanner = new LineScanner(false);
+	private int cachedLine = -1;
+	private long cachedLineStart;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private long lastMatch = -1;
+	private int matchLine = -1;
+	private IntegerProperty column = new SimpleIntegerProperty(this, "column", 1);
+
+	private Consumer<IOException> onError;
+	private boolean failing;
+
+	public LargeFileViewer(File file, Charset charset) throws IOException {
+		this.source = file;
+		this.file = new MappedFile(file);
+		this.charset = charset;
+
+		boolean isUtf16 = charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE);
+		unitWidth = isUtf16 ? 2 : 1;
+		isBigEndian = charset.equals(StandardCharsets.UTF_16BE);
+
+		checkpoints[checkpointCount++] = 0;
+
+		setItems(lines);
+		setFixedCellSize(24);
+		getSelectionModel().selectedIndexProperty().addListener((obs, oldValue, newValue) -> {
+			// Searching restarts from the selected line once the user selects another one
+			if (newValue.intValue() != matchLine) {
+				lastMatch = -1;
+				matchLine = -1;
+				column.set(1);
+			}
+		});
+	}
+
+	public Task<Void> createIndexer() {
+		indexer = new Task<Void>() {
+			@Override
+			protected Void call() throws IOException {
+				long size = file.size();
+				if (scan(size, this::isCancelled, position -> updateProgress(position, size))) {
+					updateProgress(size, size);
+				}
+				return null;
+			}
+		};
+
+		return indexer;
+	}
+
+	// A task indexing the lines appended to the file once it has been indexed. The task
+	// returns when the file is truncated or replaced, it has to be opened again then.
+	public Task<Void> createFollower() {
+		follower = new Task<Void>() {
+			@Override
+			protected Void call() throws IOException, InterruptedException {
+				Object key = FileFollower.getFileKey(source);
+
+				while (!isCancelled()) {
+					Object currentKey = FileFollower.getFileKey(source);
+
+					// The file is missing while it is being rotated, wait for the new one
+					if (currentKey != null) {
+						long size = file.refresh();
+						if (!currentKey.equals(key) || size < scanner.position) {
+							return null;
+						}
+						if (size > scanner.position) {
+							scan(size, this::isCancelled, position -> {});
+						}
+					}
+
+					try {
+						Thread.sleep(FileFollower.POLL_INTERVAL);
+					} catch(InterruptedException e) {
+						if (isCancelled()) {
+							return null;
+						}
+						throw e;
+					}
+				}
+
+				return null;
+			}
+		};
+
+		return follower;
+	}
+
+	public File getFile() {
+		return source;
+	}
+
+	// Whether the whole file has been indexed, it can be followed from then on
+	public boolean isIndexed() {
+		return indexer != null && indexer.getState() == Worker.State.SUCCEEDED;
+	}
+
+	public ReadOnlyIntegerProperty columnProperty() {
+		return column;
+	}
+
+	public int getColumn() {
+		return column.get();
+	}
+
+	public void goToLine(int line) {
+		getSelectionModel().select(line);
+		scrollTo(Math.max(0, line - 1));
+	}
+
+	// The read errors are reported once on the FX thread, until the file can be read again
+	public void setOnError(Consumer<IOException> onError) {
+		this.onError = onError;
+	}
+
+	// A task searching from the selected line, or the match found last, in the background.
+	// The match found is selected once the task succeeds, the value tells whether there was one.
+	public Task<Boolean> createFinder(String target, Direction dir, boolean isCaseSensitive) {
+		if (finder != null) {
+			finder.cancel();
+		}
+
+		byte[] pattern = target.getBytes(charset);
+		long lastMatch = this.lastMatch;
+		int selectedLine = Math.max(0, getSelectionModel().getSelectedIndex());
+
+		finder = new Task<Boolean>() {
+			private int foundLine, foundColumn;
+			private long found;
+
+			@Override
+			protected Boolean call() throws IOException {
+				if (pattern.length == 0) {
+					return false;
+				}
+
+				// The task has its own scanner and buffer, the FX thread keeps reading lines meanwhile
+				LineScanner lineScanner = new LineScanner(false);
+				byte[] bytes = new byte[BUFFER_SIZE];
+
+				if (dir == Direction.UP) {
+					long from = (lastMatch != -1) ? lastMatch : findLineStart(lineScanner, selectedLine);
+					found = findBackward(bytes, pattern, from - unitWidth, isCaseSensitive, this::isCancelled);
+				} else {
+					long from = (lastMatch != -1) ? lastMatch + unitWidth : findLineStart(lineScanner, selectedLine);
+					found = findForward(bytes, pattern, from, isCaseSensitive, this::isCancelled);
+				}
+
+				if (found == -1) {
+					return false;
+				}
+
+				foundLine = getLineOfPosition(lineScanner, found);
+				long lineStart = findLineStart(lineScanner, foundLine);
+				int length = (int) Math.min(found - lineStart, MAX_LINE_LENGTH);
+				int count = file.get(lineStart, bytes, 0, length);
+				foundColumn = new String(bytes, 0, count, charset).length() + 1;
+
+				return true;
+			}
+
+			@Override
+			protected void succeeded() {
+				if (getValue()) {
+					LargeFileViewer.this.lastMatch = found;
+					matchLine = foundLine;
+					column.set(foundColumn);
+					getSelectionModel().select(foundLine);
+					scrollTo(Math.max(0, foundLine - 1));
+				}
+			}
+		};
+
+		return finder;
+	}
+
+	public void close() {
+		if (indexer != null) {
+			indexer.cancel();
+		}
+		if (follower != null) {
+			follower.cancel();
+		}
+		if (finder != null) {
+			finder.cancel();
+		}
+
+		try {
+			file.close();
+		} catch(IOException e) {
+			reportError(e);
+		}
+	}
+
+	private void reportError(IOException e) {
+		if (onError != null && !failing) {
+			failing = true;
+			Platform.runLater(() -> onError.accept(e));
+		}
+	}
+
+	// Count the lines from where the last scan stopped up to the given size, publishing them
+	// about ten times per second. Return false if cancelled.
+	private boolean scan(long size, BooleanSupplier isCancelled, LongConsumer progress) throws IOException {
+		long lastPublished = System.nanoTime();
+
+		while (scanner.scan(size, Integer.MAX_VALUE)) {
+			if (isCancelled.getAsBoolean()) {
+				return false;
+			}
+
+			if (System.nanoTime() - lastPublished > 100_000_000L) {
+				publish(scanner.line + 1, scanner.position);
+				progress.accept(scanner.position);
+				lastPublished = System.nanoTime();
+			}
+		}
+
+		publish(scanner.line + 1, size);
+		return true;
+	}
+
+	private synchronized void addCheckpoint(long position) {
+		if (checkpointCount == checkpoints.length) {
+			checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+		}
+		checkpoints[checkpointCount++] = position;
+	}
+
+	private void publish(int lineCount, long size) {
+		Platform.runLater(() -> {
+			int oldLineCount = indexedLines;
+			synchronized (this) {
+				indexedLines = lineCount;
+				indexedSize = size;
+			}
+			lines.linesChanged(oldLineCount, lineCount);
+		});
+	}
+
+	private synchronized long getCheckpoint(int index) {
+		return checkpoints[index];
+	}
+
+	// Only used on the FX thread, the start of the line read last is cached
+	private long getLineStart(int line) throws IOException {
+		if (cachedLine != -1 && cachedLine <= line && line - cachedLine < LINES_PER_CHECKPOINT) {
+			lineScanner.reset(cachedLineStart, cachedLine);
+		} else {
+			lineScanner.reset(getCheckpoint(line / LINES_PER_CHECKPOINT), line / LINES_PER_CHECKPOINT * LINES_PER_CHECKPOINT);
+		}
+
+		cachedLineStart = skipLines(lineScanner, line);
+		cachedLine = line;
+
+		return cachedLineStart;
+	}
+
+	private long findLineStart(LineScanner lineScanner, int line) throws IOException {
+		lineScanner.reset(getCheckpoint(line / LINES_PER_CHECKPOINT), line / LINES_PER_CHECKPOINT * LINES_PER_CHECKPOINT);
+		return skipLines(lineScanner, line);
+	}
+
+	// Skip the line breaks between the line start the scanner is at and the wanted line
+	private long skipLines(LineScanner lineScanner, int line) throws IOException {
+		long limit = getIndexedSize();
+		while (lineScanner.line < line && lineScanner.scan(limit, line)) {
+			// Scan the next buffer
+		}
+
+		return lineScanner.position;
+	}
+
+	private int getLineOfPosition(LineScanner lineScanner, long position) throws IOException {
+		int low = 0;
+		int high;
+		synchronized (this) {
+			high = checkpointCount - 1;
+		}
+
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (getCheckpoint(mid) <= position) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		// Count the line breaks between the checkpoint and the position
+		lineScanner.reset(getCheckpoint(low), low * LINES_PER_CHECKPOINT);
+		while (lineScanner.scan(position, Integer.MAX_VALUE)) {
+			// Scan the next buffer
+		}
+
+		// A CR right before the position ends a line unless a LF follows it
+		int line = lineScanner.line;
+		if (lineScanner.afterReturn) {
+			byte[] unit = new byte[unitWidth];
+			if (file.get(position, unit, 0, unitWidth) == unitWidth && getCodeUnit(unit, 0) != '\n') {
+				line++;
+			}
+		}
+
+		return line;
+	}
+
+	private String readLine(int line) {
+		try {
+			long start = getLineStart(line);
+			int count = file.get(start, buffer, 0, MAX_LINE_LENGTH);
+			count -= count % unitWidth;
+
+			int length = 0;
+			while (length < count) {
+				int unit = getCodeUnit(buffer, length);
+				if (unit == '\n' || unit == '\r') {
+					break;
+				}
+				length += unitWidth;
+			}
+
+			failing = false;
+			return new String(buffer, 0, length, charset);
+		} catch(IOException e) {
+			reportError(e);
+			return "";
+		}
+	}
+
+	// Only the matches starting at a code unit are found, half a UTF-16 character never matches
+	private long findForward(byte[] bytes, byte[] pattern, long from, boolean isCaseSensitive, BooleanSupplier isCancelled) throws IOException {
+		long limit = getIndexedSize();
+		long position = Math.max(0, from);
+
+		// Consecutive windows overlap by the pattern length so no match is cut in half
+		while (position + pattern.length <= limit && !isCancelled.getAsBoolean()) {
+			int count = file.get(position, bytes, 0, (int) Math.min(bytes.length, limit - position));
+			count -= count % unitWidth;
+			for (int i = 0; i + pattern.length <= count; i += unitWidth) {
+				if (matches(bytes, i, pattern, isCaseSensitive)) {
+					return position + i;
+				}
+			}
+			if (position + count >= limit) {
+				break;
+			}
+			position += count - pattern.length + unitWidth;
+		}
+
+		return -1;
+	}
+
+	private long findBackward(byte[] bytes, byte[] pattern, long from, boolean isCaseSensitive, BooleanSupplier isCancelled) throws IOException {
+		long end = Math.min(from + pattern.length, getIndexedSize());
+		end -= end % unitWidth;
+
+		while (end - pattern.length >= 0 && !isCancelled.getAsBoolean()) {
+			long start = Math.max(0, end - bytes.length);
+			int count = file.get(start, bytes, 0, (int)(end - start));
+			for (int i = count - pattern.length; i >= 0; i -= unitWidth) {
+				if (matches(bytes, i, pattern, isCaseSensitive)) {
+					return start + i;
+				}
+			}
+			if (start == 0) {
+				break;
+			}
+			end = start + pattern.length - unitWidth;
+		}
+
+		return -1;
+	}
+
+	private boolean matches(byte[] bytes, int offset, byte[] pattern, boolean isCaseSensitive) {
+		for (int i = 0; i < pattern.length; i += unitWidth) {
+			int a = getCodeUnit(bytes, offset + i);
+			int b = getCodeUnit(pattern, i);
+			if (a != b && (isCaseSensitive || toLowerCase(a) != toLowerCase(b))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Only ASCII letters are folded, other bytes may be part of a multi-byte character
+	private int toLowerCase(int unit) {
+		return (unit >= 'A' && unit <= 'Z') ? unit + 32 : unit;
+	}
+
+	private int getCodeUnit(byte[] bytes, int offset) {
+		int first = bytes[offset] & 0xFF;
+		if (unitWidth == 1) {
+			return first;
+		}
+		int second = bytes[offset + 1] & 0xFF;
+		return isBigEndian ? first << 8 | second : second << 8 | first;
+	}
+
+	private synchronized long getIndexedSize() {
+		return indexedSize;
+	}
+
+	// Walks the line breaks of the file from a line start on. A line ends with a LF, a CRLF
+	// or a CR, the CR only once the code unit after it is known not to be a LF.
+	private class LineScanner {
+
+		private boolean isIndexing;
+		private byte[] bytes = new byte[BUFFER_SIZE];
+		private long position;
+		private int line;
+		private boolean afterReturn;
+
+		// The indexing scanner keeps a checkpoint every LINES_PER_CHECKPOINT lines
+		private LineScanner(boolean isIndexing) {
+			this.isIndexing = isIndexing;
+		}
+
+		private void reset(long position, int line) {
+			this.position = position;
+			this.line = line;
+			afterReturn = false;
+		}
+
+		// Scan a buffer full of the file up to the limit, stopping at the start of the last
+		// line wanted. Return false if not a whole code unit is left to scan.
+		private boolean scan(long limit, int lastLine) throws IOException {
+			if (limit - position < unitWidth) {
+				return false;
+			}
+
+			int count = file.get(position, bytes, 0, (int) Math.min(bytes.length, limit - position));
+			count -= count % unitWidth;
+
+			int i = 0;
+			while (i < count && line < lastLine) {
+				int unit = getCodeUnit(bytes, i);
+				if (afterReturn && unit != '\n') {
+					// The CR before ended the line, this code unit is scanned again as the start of the next one
+					afterReturn = false;
+					lineStarted(position + i);
+				} else {
+					afterReturn = unit == '\r';
+					i += unitWidth;
+					if (unit == '\n') {
+						lineStarted(position + i);
+					}
+				}
+			}
+			position += i;
+
+			return true;
+		}
+
+		private void lineStarted(long start) {
+			line++;
+			if (isIndexing && line % LINES_PER_CHECKPOINT == 0) {
+				addCheckpoint(start);
+			}
+		}
+	}
+
+	private class Lines extends ObservableListBase<String> {
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= indexedLines) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + indexedLines);
+			}
+			return readLine(index);
+		}
+
+		@Override
+		public int size() {
+			return indexedLines;
+		}
+
+		// The last line is published before the whole of it may be scanned or even written,
+		// so it is replaced as well
+		private void linesChanged(int from, int to) {
+			if (to > from || from > 0) {
+				beginChange();
+				if (from > 0) {
+					nextSet(from - 1, null);
+				}
+				if (to > from) {
+					nextAdd(from, to);
+				}
+				endChange();
+			}
+		}
+	}
+}
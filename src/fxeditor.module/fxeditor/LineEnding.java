@@ -0,0 +1,112 @@
+package fxeditor;
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+public enum LineEnding {
+	LF("\n", "Unix (LF)"), CRLF("\r\n", "Windows (CRLF)"), CR("\r", "Macintosh (CR)");
+
+	private static final int SAMPLE_SIZE = 8 * 1024;
+
+	private final String separator;
+	private final String description;
+
+	LineEnding(String separator, String description) {
+		this.separator = separator;
+		this.description = description;
+	}
+
+	// The line ending of the platform, used for new files
+	public static LineEnding getDefault() {
+		switch (System.lineSeparator()) {
+			case "\r\n":
+				return CRLF;
+			case "\r":
+				return CR;
+			default:
+				return LF;
+		}
+	}
+
+	// The most frequent line ending in the first few kilobytes of the file, null if there
+	// is none. The file loader counts them in the whole file instead.
+	public static LineEnding detect(File file, Charset charset) throws IOException {
+		char[] sample = new char[SAMPLE_SIZE];
+		int count = 0;
+		try (Reader in = new InputStreamReader(new FileInputStream(file), charset)) {
+			int read;
+			while (count < sample.length && (read = in.read(sample, count, sample.length - count)) != -1) {
+				count += read;
+			}
+		}
+
+		Counter counter = new Counter(false);
+		counter.count(sample, 0, count);
+		counter.finish();
+
+		return counter.getMostFrequent();
+	}
+
+	public String getSeparator() {
+		return separator;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	// Counts the line endings of a text given in parts, a CR at the end of a part makes a
+	// CRLF with a LF at the start of the next one
+	public static class Counter {
+
+		private int lfCount, crlfCount, crCount;
+		private boolean afterReturn;
+
+		// afterReturn tells that the text before ended with a CR, it is counted as a CR or a
+		// CRLF once the first character is known
+		public Counter(boolean afterReturn) {
+			this.afterReturn = afterReturn;
+		}
+
+		public void count(char[] chars, int start, int end) {
+			for (int i = start; i < end; i++) {
+				char c = chars[i];
+				if (afterReturn) {
+					afterReturn = false;
+					if (c == '\n') {
+						crlfCount++;
+						continue;
+					}
+					crCount++;
+				}
+
+				if (c == '\n') {
+					lfCount++;
+				} else if (c == '\r') {
+					afterReturn = true;
+				}
+			}
+		}
+
+		// The text ends here, a CR at the end is a line ending of its own
+		public void finish() {
+			if (afterReturn) {
+				crCount++;
+				afterReturn = false;
+			}
+		}
+
+		// The most frequent line ending, null if there is none
+		public LineEnding getMostFrequent() {
+			if (lfCount == 0 && crlfCount == 0 && crCount == 0) {
+				return null;
+			} else if (crlfCount >= lfCount && crlfCount >= crCount) {
+				return CRLF;
+			} else if (lfCount >= crCount) {
+				return LF;
+			} else {
+				return CR;
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package fxeditor;
+
+import java.util.Arrays;
+
+public class LineIndex implements TextChangeListener {
+
+	// The start offsets of the lines are kept in a gap buffer. The entries before
+	// the gap are absolute offsets, the entries after the gap are distances from the
+	// end of the text, so an edit never has to shift the lines behind it.
+	private int[] starts = new int[16];
+	private int gapStart;
+	private int gapEnd;
+	private int length;
+
+	public LineIndex() {
+		reset("");
+	}
+
+	public void reset(CharSequence text) {
+		starts = new int[Math.max(16, starts.length)];
+		starts[0] = 0;
+		gapStart = 1;
+		gapEnd = starts.length;
+		length = 0;
+
+		insert(0, text);
+		length = text.length();
+	}
+
+	@Override
+	public void textChanged(int start, int end, String text) {
+		// Keep the lines starting at or before the edit in front of the gap
+		moveGap(getLineOfOffset(start) + 1);
+
+		// Remove the lines whose start lies in the removed range
+		while (gapEnd < starts.length && length - starts[gapEnd] <= end) {
+			gapEnd++;
+		}
+
+		insert(start, text);
+		length += text.length() - (end - start);
+	}
+
+	public int getLineCount() {
+		return gapStart + starts.length - gapEnd;
+	}
+
+	public int getLineStart(int line) {
+		if (line < gapStart) {
+			return starts[line];
+		} else {
+			return length - starts[line - gapStart + gapEnd];
+		}
+	}
+
+	public int getLineOfOffset(int offset) {
+		int low = 0;
+		int high = getLineCount() - 1;
+
+		// Find the last line starting at or before the offset
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (getLineStart(mid) <= offset) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	public int getColumnOfOffset(int offset) {
+		return offset - getLineStart(getLineOfOffset(offset));
+	}
+
+	private void insert(int offset, CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				if (gapStart == gapEnd) {
+					grow();
+				}
+				starts[gapStart++] = offset + i + 1;
+			}
+		}
+	}
+
+	private void moveGap(int line) {
+		while (gapStart > line) {
+			starts[--gapEnd] = length - starts[--gapStart];
+		}
+		while (gapStart < line) {
+			starts[gapStart++] = length - starts[gapEnd++];
+		}
+	}
+
+	private void grow() {
+		int tail = starts.length - gapEnd;
+		int[] newStarts = Arrays.copyOf(starts, starts.length * 2);
+
+		System.arraycopy(starts, gapEnd, newStarts, newStarts.length - tail, tail);
+		gapEnd = newStarts.length - tail;
+		starts = newStarts;
+	}
+}
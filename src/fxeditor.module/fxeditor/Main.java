@@ -1,6 +1,9 @@
 package fxeditor;
 
+import javafx.animation.*;
 import javafx.application.*;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.geometry.*;
 import javafx.print.PrinterJob;
@@ -11,6 +14,7 @@ import javafx.scene.input.*;
 import javafx.scene.layout.*;
 import javafx.scene.text.*;
 import javafx.stage.*;
+import javafx.util.Duration;
 
 import java.io.*;
 import java.text.DateFormat;
@@ -18,6 +22,13 @@ import java.util.*;
 
 public class Main extends Application {
 
+	private static final long LARGE_FILE_SIZE = 64L * 1024 * 1024;
+
+	// The text of an unmodified tab is dropped once it hasn't been used for a while, or
+	// sooner while the tabs take more memory than the budget
+	private static final long UNLOAD_DELAY = 10 * 60 * 1000;
+	private static final long MEMORY_LIMIT = Long.getLong("fxeditor.documentMemoryLimit", Runtime.getRuntime().maxMemory() / 2);
+
 	private Stage stage;
 	private Scene scene;
 
@@ -26,23 +37,29 @@ public class Main extends Application {
 
 	private HBox statusBar;
 	private BorderPane root;
-	private TextArea editor;
-	private Label status;
+	private TabPane tabPane;
+	private Label status, lineEndingStatus, encodingStatus;
 
 	private MenuBar menuBar;
-	private Menu file, edit, format, view, help;
-	private MenuItem newFile, openFile, saveFile, saveAs, separator1, print, separator2, exit;
-	private MenuItem undo, separator3, cut, copy, paste, delete, separator4, find, findNext, replace, goTo, separator5, selectAll, timeDate;
-	private MenuItem font, getHelp, separator6, about;
-	private CheckMenuItem autoWrap, toggleStatusBar;
-
-	private File textFile;
+	private Menu file, edit, format, lineEndings, view, help;
+	private MenuItem newFile, openFile, saveFile, saveAs, closeTab, separator1, print, separator2, exit;
+	private MenuItem undo, redo, separator3, cut, copy, paste, delete, separator4, find, findNext, replace, findInFolder, goTo, separator5, selectAll, timeDate;
+	private MenuItem font, separator7, getHelp, separator6, about, diagnostics;
+	private CheckMenuItem autoWrap, toggleStatusBar, follow, autoScroll;
+	private RadioMenuItem lf, crlf, cr;
+	private ToggleGroup lineEndingGroup;
+
+	// The selected tab
+	private DocumentTab document;
 	private Clipboard clipboard;
 	private FindDialog findDialog;
 	private FindReplaceDialog findReplaceDialog;
+	private FindInFolderDialog findInFolderDialog;
 	private FontChooser fontChooser;
+	private FontCatalog fontCatalog;
+	private DiagnosticsDialog diagnosticsDialog;
 	private String lastOpenDir = "";
-	private String lastSavedText = "";
+	private Timeline unloadTimer;
 
 	@Override
 	public void init() {
@@ -53,8 +70,8 @@ public class Main extends Application {
 		file = new Menu("檔案(_F)");
 		edit = new Menu("編輯(_E)");
 		edit.setOnShown(e -> {
-			paste.setDisable(!clipboard.hasString());
-			findNext.setDisable(findDialog.getLastFindedString().isEmpty());
+			paste.setDisable(document.getLargeFileViewer() != null || !clipboard.hasString());
+			findNext.setDisable(findDialog == null || findDialog.getLastFindedString().isEmpty());
 		});
 		format = new Menu("格式(_O)");
 		view = new Menu("檢視(_V)");
@@ -76,11 +93,15 @@ public class Main extends Application {
 
 		saveFile = new MenuItem("儲存檔案(_S)");
 		saveFile.setAccelerator(KeyCombination.valueOf("Shortcut+S"));
-		saveFile.setOnAction(e -> saveFile());
+		saveFile.setOnAction(e -> saveFile(document, null));
 
 		saveAs = new MenuItem("另存新檔(_A)");
 		saveAs.setAccelerator(KeyCombination.valueOf("Shortcut+Shift+S"));
-		saveAs.setOnAction(e -> saveAsNewFile());
+		saveAs.setOnAction(e -> saveAsNewFile(document, null));
+
+		closeTab = new MenuItem("關閉索引標籤(_C)");
+		closeTab.setAccelerator(KeyCombination.valueOf("Shortcut+W"));
+		closeTab.setOnAction(e -> closeTab(document, null));
 
 		separator1 = new SeparatorMenuItem();
 
@@ -99,123 +120,152 @@ public class Main extends Application {
 		separator2 = new SeparatorMenuItem();
 
 		exit = new MenuItem("結束(_X)");
-		exit.setOnAction(e -> Platform.exit());
+		exit.setOnAction(e -> closeModifiedTabs(Platform::exit));
 
-		file.getItems().addAll(newFile, openFile, saveFile, saveAs, separator1, print, separator2, exit);
+		file.getItems().addAll(newFile, openFile, saveFile, saveAs, closeTab, separator1, print, separator2, exit);
 
 		// Edit menu
 		undo = new MenuItem("復原(_U)");
 		undo.setAccelerator(KeyCombination.valueOf("Shortcut+Z"));
 		undo.setDisable(true);
-		undo.setOnAction(e -> editor.undo());
+		undo.setOnAction(e -> document.getEditor().undoEdit());
+
+		redo = new MenuItem("重做(_R)");
+		redo.setAccelerator(KeyCombination.valueOf("Shortcut+Y"));
+		redo.setDisable(true);
+		redo.setOnAction(e -> document.getEditor().redoEdit());
 
 		separator3 = new SeparatorMenuItem();
 
 		cut = new MenuItem("剪下(_T)");
 		cut.setAccelerator(KeyCombination.valueOf("Shortcut+X"));
 		cut.setDisable(true);
-		cut.setOnAction(e -> editor.cut());
+		cut.setOnAction(e -> document.getEditor().cut());
 
 		copy = new MenuItem("複製(_C)");
 		copy.setAccelerator(KeyCombination.valueOf("Shortcut+C"));
 		copy.setDisable(true);
-		copy.setOnAction(e -> editor.copy());
+		copy.setOnAction(e -> document.getEditor().copy());
 
 		paste = new MenuItem("貼上(_P)");
 		paste.setAccelerator(KeyCombination.valueOf("Shortcut+V"));
-		paste.setOnAction(e -> editor.paste());
+		paste.setOnAction(e -> document.getEditor().paste());
 
 		delete = new MenuItem("刪除(_L)");
 		delete.setAccelerator(KeyCombination.valueOf("Del"));
 		delete.setDisable(true);
-		delete.setOnAction(e -> editor.deleteText(editor.getSelection()));
+		delete.setOnAction(e -> document.getEditor().deleteText(document.getEditor().getSelection()));
 
 		separator4 = new SeparatorMenuItem();
 
 		find = new MenuItem("尋找(_F)...");
 		find.setAccelerator(KeyCombination.valueOf("Shortcut+F"));
-		find.setOnAction(e -> findDialog.show());
+		find.setOnAction(e -> getFindDialog().show());
 
 		findNext = new MenuItem("找下一個(_N)");
 		findNext.setAccelerator(KeyCombination.valueOf("F3"));
 		findNext.setOnAction(e -> {
-			if (!findDialog.getLastFindedString().isEmpty()) {
+			if (findDialog != null && !findDialog.getLastFindedString().isEmpty()) {
 				findDialog.findNext(Direction.DOWN, false);
 			}
 		});
 
 		replace = new MenuItem("取代(_R)...");
 		replace.setAccelerator(KeyCombination.valueOf("Shortcut+H"));
-		replace.setOnAction(e -> findReplaceDialog.show());
+		replace.setOnAction(e -> getFindReplaceDialog().show());
+
+		findInFolder = new MenuItem("在資料夾中尋找(_I)...");
+		findInFolder.setAccelerator(KeyCombination.valueOf("Shortcut+Shift+F"));
+		findInFolder.setOnAction(e -> {
+			String directory = lastOpenDir.isEmpty() ? System.getProperty("user.home") : lastOpenDir;
+			String target = (findDialog != null) ? findDialog.getLastFindedString() : "";
+			getFindInFolderDialog().show(directory, target);
+		});
 
 		goTo = new MenuItem("移至(_G)...");
 		goTo.setAccelerator(KeyCombination.valueOf("Shortcut+G"));
 		goTo.setOnAction(e -> {
-			String[] totalLines = getTotalLines();
-			TextInputDialog goToLineDialog = createGoToLineDialog();
+			EditorTextArea editor = document.getEditor();
+			LargeFileViewer largeFileViewer = document.getLargeFileViewer();
+
+			// The wrapped text goes to a row as shown on the screen
+			int lineCount;
+			if (largeFileViewer != null) {
+				lineCount = largeFileViewer.getItems().size();
+			} else if (editor.isWrapText()) {
+				lineCount = document.getWrapIndex().getRowCount();
+			} else {
+				lineCount = document.getLineIndex().getLineCount();
+			}
+			TextInputDialog goToLineDialog = createGoToLineDialog(lineCount);
 			Optional<String> result = goToLineDialog.showAndWait();
 			if (result.isPresent()) {
-				try {
-					int lineNumber = Integer.parseInt(result.get());
-					if (lineNumber >= 1 && lineNumber <= totalLines.length) {
-						// Calculate the length from beginning to the target line
-						int position = 0;
-						for (int i = 0; i < lineNumber - 1; i++) {
-							position += totalLines[i].length();
-						}
-
-						// Move the caret to the target line
-						editor.positionCaret(position);
-					}
-				} catch(NumberFormatException ex){
-					throw new NumberFormatException("Invalid input");
+				// The dialog only accepts a line number in range
+				int line = parseLineNumber(result.get(), lineCount) - 1;
+				if (largeFileViewer != null) {
+					largeFileViewer.goToLine(line);
+				} else {
+					// Move the caret to the start of the line, the text area scrolls to it
+					editor.positionCaret(editor.isWrapText() ? document.getWrapIndex().getRowStart(line) : document.getLineIndex().getLineStart(line));
+					editor.requestFocus();
 				}
 			}
 		});
 
-
 		separator5 = new SeparatorMenuItem();
 
 		selectAll = new MenuItem("全選(_A)");
 		selectAll.setAccelerator(KeyCombination.valueOf("Shortcut+A"));
-		selectAll.setOnAction(e -> editor.selectAll());
+		selectAll.setOnAction(e -> document.getEditor().selectAll());
 
 		timeDate = new MenuItem("時間/日期(_D)");
 		timeDate.setAccelerator(KeyCombination.valueOf("F5"));
 		timeDate.setOnAction(e -> {
 			DateFormat dateFormat = DateFormat.getDateTimeInstance();
+			EditorTextArea editor = document.getEditor();
 			editor.insertText(editor.getCaretPosition(), dateFormat.format(new Date()));
 		});
 
-		edit.getItems().addAll(undo, separator3, cut, copy, paste, delete, separator4, find, findNext, replace, goTo, separator5, selectAll, timeDate);
+		edit.getItems().addAll(undo, redo, separator3, cut, copy, paste, delete, separator4, find, findNext, replace, findInFolder, goTo, separator5, selectAll, timeDate);
 
 		// Format menu
 		autoWrap = new CheckMenuItem("自動換行(_W)");
 		autoWrap.setOnAction(e -> {
-			if (autoWrap.isSelected()) {
-				goTo.setDisable(true);
-
-				toggleStatusBar.setDisable(true);
-				toggleStatusBar.setSelected(false);
-
-				statusBar.setVisible(false);
-				statusBar.setManaged(false);
-
-				editor.setWrapText(true);
-			} else {
-				goTo.setDisable(false);
-				toggleStatusBar.setDisable(false);
-				editor.setWrapText(false);
+			// The status bar shows the row and column on the screen while the text wraps
+			for (Tab tab : tabPane.getTabs()) {
+				((DocumentTab) tab).setWrapText(autoWrap.isSelected());
 			}
+			updateStatus();
 		});
 
 		font = new MenuItem("字型(_F)...");
 		font.setOnAction(e -> {
-			Font newFont = fontChooser.showAndWait(editor.getFont());
-			editor.setFont(newFont);
+			// Every tab uses the same font
+			Font newFont = getFontChooser().showAndWait(document.getEditor().getFont());
+			for (Tab tab : tabPane.getTabs()) {
+				((DocumentTab) tab).getEditor().setFont(newFont);
+			}
 		});
 
-		format.getItems().addAll(autoWrap, font);
+		// The text always uses LF, the chosen line ending is written on save
+		lineEndingGroup = new ToggleGroup();
+
+		lf = new RadioMenuItem(LineEnding.LF.getDescription());
+		lf.setToggleGroup(lineEndingGroup);
+		lf.setOnAction(e -> convertLineEndings(LineEnding.LF));
+
+		crlf = new RadioMenuItem(LineEnding.CRLF.getDescription());
+		crlf.setToggleGroup(lineEndingGroup);
+		crlf.setOnAction(e -> convertLineEndings(LineEnding.CRLF));
+
+		cr = new RadioMenuItem(LineEnding.CR.getDescription());
+		cr.setToggleGroup(lineEndingGroup);
+		cr.setOnAction(e -> convertLineEndings(LineEnding.CR));
+
+		lineEndings = new Menu("行尾字元(_L)");
+		lineEndings.getItems().addAll(crlf, lf, cr);
+
+		format.getItems().addAll(autoWrap, font, lineEndings);
 
 		// View menu
 		toggleStatusBar = new CheckMenuItem("狀態列(_S)");
@@ -229,7 +279,23 @@ public class Main extends Application {
 				statusBar.setVisible(false);
 			}
 		});
-		view.getItems().add(toggleStatusBar);
+		follow = new CheckMenuItem("跟隨檔案結尾(_F)");
+		follow.setOnAction(e -> {
+			document.setFollow(follow.isSelected());
+			if (follow.isSelected()) {
+				followFile(document);
+			} else {
+				stopFollowing(document);
+			}
+		});
+
+		autoScroll = new CheckMenuItem("自動捲動(_A)");
+		autoScroll.setSelected(true);
+		autoScroll.setOnAction(e -> scrollToEnd(document));
+
+		separator7 = new SeparatorMenuItem();
+
+		view.getItems().addAll(toggleStatusBar, separator7, follow, autoScroll);
 
 		// Help menu
 		getHelp = new MenuItem("檢視說明(_H)");
@@ -247,73 +313,49 @@ public class Main extends Application {
 
 		help.getItems().addAll(getHelp, separator6, about);
 
-		// Initialize the text area
-		editor = new TextArea();
-		editor.undoableProperty().addListener((obs, oldValue, newValue) -> {
-			if (newValue) {
-				undo.setDisable(false);
-			} else {
-				undo.setDisable(true);
-			}
-		});
-		editor.caretPositionProperty().addListener((obs, oldValue, newValue) -> {
-			String[] totalLines = getTotalLines();
-			int row = 0;
-			int col = 0;
-			int length = 0;
-
-			for (int i = 0; i < totalLines.length; i++) {
-				length += totalLines[i].length();
-				row = i + 1;
-
-				if (i == totalLines.length - 1) {
-					length -= totalLines[i].length();
-				}
+		// Only shown when the editor runs with the instrumentation on
+		if (Instrumentation.isEnabled()) {
+			diagnostics = new MenuItem("診斷資訊(_D)...");
+			diagnostics.setOnAction(e -> getDiagnosticsDialog().show());
+			help.getItems().add(diagnostics);
+		}
 
-				if (length > newValue.intValue()) {
-					length -= totalLines[i].length();
-					break;
-				}
-			}
-			col = newValue.intValue() - length + 1;
-			status.setText("第" + row + "列，第" + col + "行");
-		});
-		editor.selectedTextProperty().addListener((obs, oldValue, newValue) -> {
-			if (newValue.isEmpty()) {
-				copy.setDisable(true);
-				cut.setDisable(true);
-				delete.setDisable(true);
-			} else {
-				copy.setDisable(false);
-				cut.setDisable(false);
-				delete.setDisable(false);
-			}
-		});
-		editor.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
-			if (e.getCode() == KeyCode.H && e.isShortcutDown()) {
-				replace.fire();
-				e.consume();
-			}
-		});
+		// Time every menu action when instrumented
+		Instrumentation.wrapMenus(menuBar);
 
 		// Initialize the label
 		status = new Label("第" + 1 + "列，第" + 1 + "行");
+		lineEndingStatus = new Label();
+		encodingStatus = new Label();
 
 		// Set the status bar
-		statusBar = new HBox();
+		statusBar = new HBox(20);
 		statusBar.setPadding(new Insets(5));
 		statusBar.setAlignment(Pos.CENTER_RIGHT);
-		statusBar.getChildren().add(status);
+		statusBar.getChildren().addAll(status, lineEndingStatus, encodingStatus);
+
+		// Every document has a tab, there is always one to type in
+		tabPane = new TabPane();
+		tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> {
+			if (oldValue != null) {
+				((DocumentTab) oldValue).markUsed();
+			}
+			if (newValue != null) {
+				selectTab((DocumentTab) newValue);
+			}
+		});
+		createTab(-1);
 
 		// Set the root layout
 		root = new BorderPane();
 		root.setTop(menuBar);
-		root.setCenter(editor);
+		root.setCenter(tabPane);
 		root.setBottom(statusBar);
 
 		// Add the root into scene
 		scene = new Scene(root, 600, 400);
 		scene.getStylesheets().add(getClass().getResource("/resources/css/style.css").toExternalForm());
+		Instrumentation.wrapPulses(scene);
 
 		// Load icon
 		icon = new Image(getClass().getResourceAsStream("/resources/icon/notes.png"));
@@ -322,35 +364,151 @@ public class Main extends Application {
 
 	@Override
 	public void start(Stage stage) {
+		// The dialogs are created when they are first opened, not before the window is shown
 		clipboard = Clipboard.getSystemClipboard();
-		findDialog = new FindDialog(stage, editor);
-		findReplaceDialog = new FindReplaceDialog(stage, editor);
-		fontChooser = new FontChooser(stage);
 
 		this.stage = stage;
 		stage.setTitle("FXEditor");
 		stage.setScene(scene);
 		stage.getIcons().add(icon);
 		stage.setOnCloseRequest(e -> {
-			if (isFileModified()) {
-
-				Optional<ButtonType> result = showSaveConfirmationDialog();
-				switch (result.get().getButtonData()) {
-					case YES: 
-						saveFile();
-					case NO:
-						// Do nothing
-						break;
-
-					case CANCEL_CLOSE:
-					default:
-						e.consume();
-						return;
+			// Exit once every modified tab is saved or discarded
+			e.consume();
+			closeModifiedTabs(Platform::exit);
+		});
+		stage.show();
+
+		// Walking every font takes seconds on some machines, so it is done in the background
+		// while the editor starts, the font chooser lists the fonts once it is opened
+		fontCatalog = new FontCatalog();
+		fontCatalog.setOnFailed(e -> {
+			Alert alert = createFileErrorDialog("無法讀取字型清單\n" + fontCatalog.getException().getMessage());
+			alert.show();
+		});
+
+		Thread thread = new Thread(fontCatalog);
+		thread.setDaemon(true);
+		thread.start();
+
+		// A training run for the class data sharing archive, see the cds target of build.xml.
+		// The dialogs are created as well, so their classes are archived too.
+		if (Boolean.getBoolean("fxeditor.exitOnShown")) {
+			getFindDialog();
+			getFindReplaceDialog();
+			getFindInFolderDialog();
+			getFontChooser();
+			Platform.runLater(Platform::exit);
+			return;
+		}
+
+		unloadTimer = new Timeline(new KeyFrame(Duration.minutes(1), e -> unloadDocuments()));
+		unloadTimer.setCycleCount(Animation.INDEFINITE);
+		unloadTimer.play();
+
+		recoverJournals();
+	}
+
+	@Override
+	public void stop() {
+		for (Tab tab : tabPane.getTabs()) {
+			((DocumentTab) tab).close();
+		}
+	}
+
+	// Offer the unsaved texts left by the last run if it didn't exit normally, each in a tab
+	// Offer the unsaved texts left by the last run if it didn't exit normally, each in a tab.
+	// The texts are read in the background, the user is asked once all of them are read.
+	private void recoverJournals() {
+		List<DocumentTab> tabs = new ArrayList<>();
+		for (int slot : EditJournal.getSnapshotSlots()) {
+			DocumentTab tab = (slot == document.getJournal().getSlot()) ? document : createTab(slot);
+
+			// Another running editor owns the journal
+			if (tab.getJournal().getSlot() == slot) {
+				// An edit would replace the journal while it is read
+				tab.getEditor().setEditable(false);
+				tabs.add(tab);
+			} else if (tab != document) {
+				removeTab(tab);
+			}
+		}
+		if (tabs.isEmpty()) {
+			return;
+		}
+
+		Task<List<EditJournal.Recovery>> recoverer = new Task<List<EditJournal.Recovery>>() {
+			@Override
+			protected List<EditJournal.Recovery> call() {
+				List<EditJournal.Recovery> recoveries = new ArrayList<>();
+				for (DocumentTab tab : tabs) {
+					recoveries.add(tab.getJournal().recover());
 				}
+				return recoveries;
+			}
+		};
+		recoverer.setOnSucceeded(e -> {
+			for (int i = 0; i < tabs.size(); i++) {
+				tabs.get(i).getEditor().setEditable(true);
+				offerRecovery(tabs.get(i), recoverer.getValue().get(i));
 			}
-			Platform.exit();
 		});
-		stage.show();
+		recoverer.setOnFailed(e -> {
+			for (DocumentTab tab : tabs) {
+				tab.getEditor().setEditable(true);
+			}
+			Alert alert = createFileErrorDialog("無法讀取復原記錄\n" + recoverer.getException().getMessage());
+			alert.show();
+		});
+
+		Thread thread = new Thread(recoverer);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Ask whether to restore the recovered text in the tab, the tab is removed otherwise
+	private void offerRecovery(DocumentTab tab, EditJournal.Recovery recovery) {
+		if (recovery == null) {
+			if (tab != document) {
+				removeTab(tab);
+			}
+			return;
+		}
+
+		String fileName = (recovery.getFile() == null) ? "未命名" : recovery.getFile().getName();
+		ButtonType restore = new ButtonType("還原", ButtonBar.ButtonData.YES);
+		ButtonType discard = new ButtonType("捨棄", ButtonBar.ButtonData.NO);
+
+		Alert alert = new Alert(Alert.AlertType.NONE, "FXEditor 上次未正常結束，是否要還原對 " + fileName + " 所做的變更?", restore, discard);
+		alert.setTitle("FXEditor");
+		alert.initOwner(stage);
+		alert.initStyle(StageStyle.UTILITY);
+
+		Optional<ButtonType> result = alert.showAndWait();
+		if (result.isPresent() && result.get() == restore) {
+			tab.setFile(recovery.getFile());
+			setEncoding(tab, FileEncoding.DEFAULT);
+			setLineEnding(tab, LineEnding.getDefault());
+			if (tab.getFile() != null && tab.getFile().isFile()) {
+				try {
+					// Keep the line endings of the file, like opening it does
+					FileEncoding encoding = FileEncoding.detect(tab.getFile());
+					LineEnding lineEnding = LineEnding.detect(tab.getFile(), encoding.getCharset());
+					setEncoding(tab, encoding);
+					if (lineEnding != null) {
+						setLineEnding(tab, lineEnding);
+					}
+				} catch(IOException e) {
+					// Save with the default encoding and line ending
+				}
+			}
+			tab.getEditor().setText(recovery.getText());
+			tabPane.getSelectionModel().select(tab);
+		} else {
+			tab.getJournal().clear();
+			if (tab != document) {
+				removeTab(tab);
+			}
+		}
 	}
 
 	private FileChooser createFileChooser(String mode) {
@@ -371,17 +529,69 @@ public class Main extends Application {
 		return fileChooser;
 	}
 
-	private TextInputDialog createGoToLineDialog() {
+	private FindDialog getFindDialog() {
+		if (findDialog == null) {
+			findDialog = new FindDialog(stage, document.getEditor());
+			findDialog.setLargeFileViewer(document.getLargeFileViewer());
+		}
+		return findDialog;
+	}
+
+	private FindReplaceDialog getFindReplaceDialog() {
+		if (findReplaceDialog == null) {
+			findReplaceDialog = new FindReplaceDialog(stage, document.getEditor());
+		}
+		return findReplaceDialog;
+	}
+
+	private FindInFolderDialog getFindInFolderDialog() {
+		if (findInFolderDialog == null) {
+			findInFolderDialog = new FindInFolderDialog(stage, this::openSearchResult);
+		}
+		return findInFolderDialog;
+	}
+
+	private FontChooser getFontChooser() {
+		if (fontChooser == null) {
+			fontChooser = new FontChooser(stage, fontCatalog);
+		}
+		return fontChooser;
+	}
+
+	private DiagnosticsDialog getDiagnosticsDialog() {
+		if (diagnosticsDialog == null) {
+			diagnosticsDialog = new DiagnosticsDialog(stage);
+		}
+		return diagnosticsDialog;
+	}
+
+	private TextInputDialog createGoToLineDialog(int lineCount) {
 		TextInputDialog textInputDialog = new TextInputDialog("1");
 		textInputDialog.initOwner(stage);
 		textInputDialog.initStyle(StageStyle.UTILITY);
 		textInputDialog.setTitle("跳至行");
 		textInputDialog.setGraphic(null);
-		textInputDialog.setHeaderText("行號:");
+		textInputDialog.setHeaderText("行號 (1 - " + lineCount + "):");
+
+		// Only allow a line number the text has
+		Node ok = textInputDialog.getDialogPane().lookupButton(ButtonType.OK);
+		textInputDialog.getEditor().textProperty().addListener((obs, oldValue, newValue) -> {
+			ok.setDisable(parseLineNumber(newValue, lineCount) == -1);
+		});
 
 		return textInputDialog;
 	}
 
+	// The line number counting from 1, -1 if the text isn't a line number between 1 and lineCount
+	private int parseLineNumber(String text, int lineCount) {
+		try {
+			int lineNumber = Integer.parseInt(text.trim());
+			return (lineNumber >= 1 && lineNumber <= lineCount) ? lineNumber : -1;
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	private Alert createPrinterErrorDialog() {
 		Alert alert = new Alert(Alert.AlertType.ERROR);
 		alert.initOwner(stage);
@@ -394,6 +604,18 @@ public class Main extends Application {
 		return alert;
 	}
 
+	private Alert createFileErrorDialog(String content) {
+		Alert alert = new Alert(Alert.AlertType.ERROR);
+		alert.initOwner(stage);
+		alert.initStyle(StageStyle.UTILITY);
+		alert.getDialogPane().setPrefWidth(300);
+		alert.setTitle("檔案錯誤");
+		alert.setHeaderText(null);
+		alert.setContentText(content);
+
+		return alert;
+	}
+
 	private Alert createAboutDialog() {
 		Alert aboutDialog = new Alert(Alert.AlertType.NONE);
 
@@ -432,12 +654,8 @@ public class Main extends Application {
 		return aboutDialog;
 	}
 
-	private boolean isFileModified() {
-		return !lastSavedText.equals(editor.getText());
-	}
-
-	private Optional<ButtonType> showSaveConfirmationDialog() {
-		String fileName = (textFile == null) ? "未命名" : textFile.getName();
+	private Optional<ButtonType> showSaveConfirmationDialog(DocumentTab tab) {
+		String fileName = (tab.getFile() == null) ? "未命名" : tab.getFile().getName();
 		ButtonType save = new ButtonType("儲存", ButtonBar.ButtonData.YES);
 		ButtonType notSave = new ButtonType("不要儲存", ButtonBar.ButtonData.NO);
 		ButtonType cancel = ButtonType.CANCEL;
@@ -450,14 +668,107 @@ public class Main extends Application {
 		return alert.showAndWait();
 	}
 
-	private void newFile() {
-		if (isFileModified()) {
-			Optional<ButtonType> result = showSaveConfirmationDialog();
-			switch (result.get().getButtonData()) {
-				case YES: 
-					saveFile();
+	// Whether to save the text although the file had bytes which couldn't be decoded
+	private boolean showLossySaveConfirmationDialog(DocumentTab tab) {
+		ButtonType save = new ButtonType("仍要儲存", ButtonBar.ButtonData.YES);
+		ButtonType cancel = ButtonType.CANCEL;
+
+		Alert alert = new Alert(Alert.AlertType.WARNING, tab.getFile().getName() + " 含有無法以 " + tab.getEncoding()
+			+ " 解碼的位元組，儲存後這些位元組將被取代字元覆蓋，是否仍要儲存?", save, cancel);
+		alert.setTitle("FXEditor");
+		alert.initOwner(stage);
+		alert.initStyle(StageStyle.UTILITY);
+
+		return alert.showAndWait().orElse(ButtonType.CANCEL) == save;
+	}
+
+	// Add a tab with the font and wrapping of the others, its edits are recorded in the given
+	// journal slot, or the first free one if -1
+	private DocumentTab createTab(int journalSlot) {
+		DocumentTab tab = new DocumentTab(journalSlot);
+		EditorTextArea editor = tab.getEditor();
+		if (document != null) {
+			editor.setFont(document.getEditor().getFont());
+		}
+		tab.setWrapText(autoWrap.isSelected());
+
+		// The journal reports a failure once, until it can be written again
+		tab.getJournal().setOnError(e -> {
+			Alert alert = createFileErrorDialog("無法存取復原記錄，未儲存的變更在程式異常結束後可能無法還原\n" + e.getMessage());
+			alert.show();
+		});
+
+		editor.fontProperty().addListener((obs, oldValue, newValue) -> updateStatus(tab));
+		tab.wrappingWidthProperty().addListener((obs, oldValue, newValue) -> {
+			if (editor.isWrapText()) {
+				updateStatus(tab);
+			}
+		});
+		editor.canUndoProperty().addListener((obs, oldValue, newValue) -> updateEditMenu(tab));
+		editor.canRedoProperty().addListener((obs, oldValue, newValue) -> updateEditMenu(tab));
+		editor.caretPositionProperty().addListener(Instrumentation.wrapListener("editor.caret", (obs, oldValue, newValue) -> updateStatus(tab)));
+		editor.selectedTextProperty().addListener(Instrumentation.wrapListener("editor.selection", (obs, oldValue, newValue) -> updateEditMenu(tab)));
+		editor.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+			if (e.getCode() == KeyCode.H && e.isShortcutDown()) {
+				replace.fire();
+				e.consume();
+			}
+		});
+
+		// The tab is closed once its changes are saved or discarded
+		tab.setOnCloseRequest(e -> {
+			e.consume();
+			closeTab(tab, null);
+		});
+
+		tabPane.getTabs().add(tab);
+		return tab;
+	}
+
+	private void selectTab(DocumentTab tab) {
+		document = tab;
+		tab.markUsed();
+
+		// The dialogs work on the selected tab
+		if (findDialog != null) {
+			findDialog.setEditor(tab.getEditor());
+			findDialog.setLargeFileViewer(tab.getLargeFileViewer());
+		}
+		if (findReplaceDialog != null) {
+			findReplaceDialog.setEditor(tab.getEditor());
+		}
+
+		// The text dropped while the tab was unused is loaded again
+		if (tab.isUnloaded()) {
+			int caret = tab.takeUnloadedCaret();
+			openFile(tab, tab.getFile(), () -> {
+				if (tab.getLargeFileViewer() == null) {
+					tab.getEditor().positionCaret(Math.min(caret, tab.getEditor().getLength()));
+				}
+			});
+		}
+
+		updateFileStatus();
+		updateMenus();
+		updateStatus();
+		unloadDocuments();
+	}
+
+	// Close the tab, asking to save its changes first. onClosed runs once it is closed.
+	private void closeTab(DocumentTab tab, Runnable onClosed) {
+		if (tab.isModified()) {
+			tabPane.getSelectionModel().select(tab);
+
+			Optional<ButtonType> result = showSaveConfirmationDialog(tab);
+			switch (result.orElse(ButtonType.CANCEL).getButtonData()) {
+				case YES:
+					// Continue once the file is saved
+					saveFile(tab, () -> closeTab(tab, onClosed));
+					return;
+
 				case NO:
-					// Do nothing
+					// The changes are discarded, so they aren't recovered either
+					tab.getJournal().clear();
 					break;
 
 				case CANCEL_CLOSE:
@@ -465,92 +776,549 @@ public class Main extends Application {
 					return;
 			}
 		}
-		textFile = null;
-		lastSavedText = "";
-		editor.clear();
+
+		removeTab(tab);
+		if (onClosed != null) {
+			onClosed.run();
+		}
+	}
+
+	// Close the modified tabs one after another, onClosed runs once all of them are closed
+	private void closeModifiedTabs(Runnable onClosed) {
+		for (Tab tab : tabPane.getTabs()) {
+			if (((DocumentTab) tab).isModified()) {
+				closeTab((DocumentTab) tab, () -> closeModifiedTabs(onClosed));
+				return;
+			}
+		}
+		onClosed.run();
+	}
+
+	private void removeTab(DocumentTab tab) {
+		tab.close();
+		tabPane.getTabs().remove(tab);
+
+		// There is always a tab to type in
+		if (tabPane.getTabs().isEmpty()) {
+			createTab(-1);
+		}
+	}
+
+	// The tab with the text or the large file, null if the file isn't open
+	private DocumentTab findTab(File file) {
+		for (Tab tab : tabPane.getTabs()) {
+			DocumentTab documentTab = (DocumentTab) tab;
+			LargeFileViewer largeFileViewer = documentTab.getLargeFileViewer();
+			if (file.equals(documentTab.getFile()) || (largeFileViewer != null && file.equals(largeFileViewer.getFile()))) {
+				return documentTab;
+			}
+		}
+		return null;
+	}
+
+	// Drop the text of the unmodified tabs not used for a while, and of the least recently
+	// used ones while all the tabs take more memory than the budget. The text is loaded
+	// from the file again once the tab is selected.
+	private void unloadDocuments() {
+		List<DocumentTab> unloadable = new ArrayList<>();
+		long memoryUsed = 0;
+		for (Tab tab : tabPane.getTabs()) {
+			DocumentTab documentTab = (DocumentTab) tab;
+			memoryUsed += documentTab.getMemoryUsage();
+			if (documentTab != document && documentTab.canUnload()) {
+				unloadable.add(documentTab);
+			}
+		}
+
+		unloadable.sort(Comparator.comparingLong(DocumentTab::getLastUsed));
+		long now = System.currentTimeMillis();
+		for (DocumentTab tab : unloadable) {
+			if (memoryUsed > MEMORY_LIMIT || now - tab.getLastUsed() >= UNLOAD_DELAY) {
+				memoryUsed -= tab.getMemoryUsage();
+				tab.unload();
+			}
+		}
+	}
+
+	private void newFile() {
+		tabPane.getSelectionModel().select(createTab(-1));
 	}
 
 	private void loadFile() {
-		if (isFileModified()) {
-			Optional<ButtonType> result = showSaveConfirmationDialog();
-			switch (result.get().getButtonData()) {
-				case YES: 
-					saveFile();
+		FileChooser fileChooser = createFileChooser("Open");
+		File file = fileChooser.showOpenDialog(stage);
+
+		if (file != null) {
+			openFile(file, null);
+		}
+	}
+
+	// Open the file found by find in folder and select the match
+	private void openSearchResult(FolderSearcher.Result match) {
+		DocumentTab tab = findTab(match.getFile());
+		if (tab == null) {
+			tab = createTab(-1);
+		}
+
+		DocumentTab matchTab = tab;
+		Runnable selectMatch = () -> {
+			EditorTextArea editor = matchTab.getEditor();
+			LineIndex lineIndex = matchTab.getLineIndex();
+			if (matchTab.getLargeFileViewer() != null) {
+				matchTab.getLargeFileViewer().goToLine(match.getLine());
+			} else if (match.getLine() < lineIndex.getLineCount()) {
+				int start = Math.min(lineIndex.getLineStart(match.getLine()) + match.getColumn(), editor.getLength());
+				editor.selectRange(start, Math.min(start + match.getLength(), editor.getLength()));
+			}
+			stage.toFront();
+		};
+
+		if (match.getFile().equals(tab.getFile()) && tab.getFileLoader() == null && !tab.isUnloaded()) {
+			tabPane.getSelectionModel().select(tab);
+			selectMatch.run();
+			return;
+		}
+
+		// Load the text, again if it was dropped, before the tab is selected
+		tab.takeUnloadedCaret();
+		openFile(tab, match.getFile(), selectMatch);
+		tabPane.getSelectionModel().select(tab);
+	}
+
+	// Open the file in a tab of its own, or select the tab if the file is open already. An
+	// empty untitled tab is used for the file instead of adding one.
+	private void openFile(File file, Runnable onLoaded) {
+		DocumentTab tab = findTab(file);
+		if (tab != null) {
+			tabPane.getSelectionModel().select(tab);
+			return;
+		}
+
+		EditorTextArea editor = document.getEditor();
+		if (document.getFile() == null && document.getLargeFileViewer() == null && document.getFileLoader() == null
+				&& editor.getLength() == 0 && !editor.isModified()) {
+			tab = document;
+		} else {
+			tab = createTab(-1);
+		}
+
+		openFile(tab, file, onLoaded);
+		tabPane.getSelectionModel().select(tab);
+	}
+
+	// Open the file in the tab, onLoaded runs once the whole text is available
+	private void openFile(DocumentTab tab, File file, Runnable onLoaded) {
+		lastOpenDir = file.getParent();
+		stopFollowing(tab);
+		cancelLoading(tab);
+		closeLargeFile(tab);
+
+		if (file.length() >= LARGE_FILE_SIZE) {
+			openLargeFile(tab, file, onLoaded);
+			return;
+		}
+
+		// Show the text as it is decoded, the editor stays read-only until the whole file is loaded
+		EditorTextArea editor = tab.getEditor();
+		tab.setFile(file);
+		tab.setLossy(false);
+		editor.load("");
+
+		long loadStart = System.nanoTime();
+		FileLoader fileLoader = new FileLoader(file, null, editor::appendLoadedText);
+		fileLoader.progressProperty().addListener((obs, oldValue, newValue) -> {
+			if (tab == document) {
+				status.setText("載入中... " + (int)(newValue.doubleValue() * 100) + "%");
+			}
+		});
+		fileLoader.setOnSucceeded(e -> {
+			Instrumentation.record("file.load", System.nanoTime() - loadStart, -1);
+			tab.setLossy(fileLoader.getReplacementCount() > 0);
+			setEncoding(tab, fileLoader.getEncoding());
+			setLineEnding(tab, (fileLoader.getLineEnding() != null) ? fileLoader.getLineEnding() : LineEnding.getDefault());
+			setLoading(tab, null);
+			if (tab.isFollow()) {
+				startFollowing(tab, fileLoader);
+			}
+			if (onLoaded != null) {
+				onLoaded.run();
+			}
+
+			// The loaded text may take the memory of other tabs
+			unloadDocuments();
+		});
+		fileLoader.setOnFailed(e -> {
+			tab.setFile(null);
+			editor.load("");
+			setLoading(tab, null);
+
+			Alert alert = createFileErrorDialog("無法開啟 " + file.getName());
+			alert.show();
+		});
+
+		setLoading(tab, fileLoader);
+
+		Thread thread = new Thread(fileLoader);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// The loader of the text, null once it is loaded
+	private void setLoading(DocumentTab tab, FileLoader fileLoader) {
+		tab.setFileLoader(fileLoader);
+		if (tab == document) {
+			updateMenus();
+			updateStatus();
+		}
+	}
+
+	private void cancelLoading(DocumentTab tab) {
+		if (tab.getFileLoader() != null) {
+			tab.getFileLoader().cancel();
+			setLoading(tab, null);
+		}
+	}
+
+	private void openLargeFile(DocumentTab tab, File file, Runnable onLoaded) {
+		LargeFileViewer largeFileViewer;
+		try {
+			FileEncoding encoding = FileEncoding.detect(file);
+			largeFileViewer = new LargeFileViewer(file, encoding.getCharset());
+			largeFileViewer.setOnError(e -> {
+				Alert alert = createFileErrorDialog("無法讀取 " + file.getName() + "\n" + e.getMessage());
+				alert.show();
+			});
+			setEncoding(tab, encoding);
+		} catch(IOException e) {
+			Alert alert = createFileErrorDialog("無法開啟 " + file.getName());
+			alert.show();
+			return;
+		}
+
+		// The large file is only viewed, the text area is kept empty meanwhile
+		tab.setFile(null);
+		tab.setLossy(false);
+		tab.getEditor().load("");
+		setLargeFileViewer(tab, largeFileViewer);
+
+		largeFileViewer.getSelectionModel().selectedIndexProperty().addListener((obs, oldValue, newValue) -> updateStatus(tab));
+		largeFileViewer.columnProperty().addListener((obs, oldValue, newValue) -> updateStatus(tab));
+		largeFileViewer.getItems().addListener((ListChangeListener<String>) c -> scrollToEnd(tab));
+
+		Task<Void> indexer = largeFileViewer.createIndexer();
+		indexer.progressProperty().addListener((obs, oldValue, newValue) -> {
+			if (tab == document) {
+				status.setText("索引中... " + (int)(newValue.doubleValue() * 100) + "%");
+			}
+		});
+		indexer.setOnSucceeded(e -> {
+			updateStatus(tab);
+			if (tab.isFollow()) {
+				startFollowing(tab, largeFileViewer.createFollower(), file);
+			}
+			if (onLoaded != null) {
+				onLoaded.run();
+			}
+		});
+		indexer.setOnFailed(e -> {
+			Alert alert = createFileErrorDialog("無法讀取 " + file.getName());
+			alert.show();
+		});
+
+		Thread thread = new Thread(indexer);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void closeLargeFile(DocumentTab tab) {
+		if (tab.getLargeFileViewer() != null) {
+			tab.getLargeFileViewer().close();
+			setLargeFileViewer(tab, null);
+		}
+	}
+
+	private void setLargeFileViewer(DocumentTab tab, LargeFileViewer largeFileViewer) {
+		tab.setLargeFileViewer(largeFileViewer);
+		if (tab == document) {
+			if (findDialog != null) {
+				findDialog.setLargeFileViewer(largeFileViewer);
+			}
+			updateMenus();
+			updateStatus();
+		}
+	}
+
+	// Follow the file of the tab, or the next one opened in it if there is none
+	private void followFile(DocumentTab tab) {
+		LargeFileViewer largeFileViewer = tab.getLargeFileViewer();
+		if (largeFileViewer != null) {
+			// Otherwise it is followed once indexed
+			if (largeFileViewer.isIndexed()) {
+				startFollowing(tab, largeFileViewer.createFollower(), largeFileViewer.getFile());
+			}
+			return;
+		}
+
+		// Followed once loaded
+		if (tab.getFile() == null || tab.getFileLoader() != null) {
+			return;
+		}
+
+		if (tab.isModified()) {
+			Optional<ButtonType> result = showSaveConfirmationDialog(tab);
+			switch (result.orElse(ButtonType.CANCEL).getButtonData()) {
+				case YES:
+					// Continue once the file is saved
+					saveFile(tab, () -> openFile(tab, tab.getFile(), null));
+					return;
+
 				case NO:
 					// Do nothing
 					break;
 
 				case CANCEL_CLOSE:
 				default:
+					tab.setFollow(false);
+					follow.setSelected(false);
 					return;
 			}
 		}
 
-		FileChooser fileChooser = createFileChooser("Open");
-		textFile = fileChooser.showOpenDialog(stage);
-
-		if (textFile != null) {
-			lastOpenDir = textFile.getParent();
-			try(Scanner scanner = new Scanner(textFile)) {
-				StringBuilder text = new StringBuilder();
-				while (scanner.hasNextLine()) {
-					text.append(scanner.nextLine() + "\n");
-				}
-				lastSavedText = text.toString();
-				editor.setText(lastSavedText);
-			} catch(FileNotFoundException e) {
-				e.printStackTrace();
+		// Load the file again, the text shown may differ from the file by now
+		openFile(tab, tab.getFile(), null);
+	}
+
+	private void startFollowing(DocumentTab tab, FileLoader fileLoader) {
+		startFollowing(tab, new FileFollower(tab.getFile(), fileLoader, text -> {
+			tab.getEditor().appendLoadedText(text);
+			scrollToEnd(tab);
+		}), tab.getFile());
+	}
+
+	// The follower returns once the file is truncated or replaced, it is opened again then
+	private void startFollowing(DocumentTab tab, Task<Void> follower, File file) {
+		follower.setOnSucceeded(e -> {
+			stopFollowing(tab);
+			openFile(tab, file, null);
+		});
+		follower.setOnFailed(e -> {
+			stopFollowing(tab);
+			tab.setFollow(false);
+			if (tab == document) {
+				follow.setSelected(false);
 			}
+
+			Alert alert = createFileErrorDialog("無法讀取 " + file.getName());
+			alert.show();
+		});
+
+		setFollowing(tab, follower);
+
+		Thread thread = new Thread(follower);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void stopFollowing(DocumentTab tab) {
+		if (tab.getFileFollower() != null) {
+			tab.getFileFollower().cancel();
+			setFollowing(tab, null);
+		}
+	}
+
+	// The follower of the file, null once it is no longer followed
+	private void setFollowing(DocumentTab tab, Task<Void> follower) {
+		tab.setFileFollower(follower);
+		if (tab == document) {
+			updateFileStatus();
+			updateMenus();
+		}
+		scrollToEnd(tab);
+	}
+
+	// Keep the end of the followed file in view
+	private void scrollToEnd(DocumentTab tab) {
+		if (tab.getFileFollower() == null || !autoScroll.isSelected()) {
+			return;
+		}
+
+		LargeFileViewer largeFileViewer = tab.getLargeFileViewer();
+		if (largeFileViewer != null) {
+			largeFileViewer.scrollTo(largeFileViewer.getItems().size() - 1);
+		} else {
+			tab.getEditor().positionCaret(tab.getEditor().getLength());
 		}
 	}
 
-	private void saveFile() {
+	private void saveFile(DocumentTab tab, Runnable onSaved) {
 		// The file hasn't been saved
-		if (textFile == null) {
-			saveAsNewFile();
+		if (tab.getFile() == null) {
+			saveAsNewFile(tab, onSaved);
 		} else {
-			try(PrintWriter writer = new PrintWriter(textFile)) {
-				lastSavedText = editor.getText();
-				writer.write(lastSavedText);
-			} catch(FileNotFoundException e) {
-				e.printStackTrace();
-			}
+			save(tab, tab.getFile(), onSaved);
 		}
 	}
 
-	private void saveAsNewFile() {
+	private void saveAsNewFile(DocumentTab tab, Runnable onSaved) {
 		FileChooser fileChooser = createFileChooser("Save");
-		textFile = fileChooser.showSaveDialog(stage);
+		File file = fileChooser.showSaveDialog(stage);
 
-		if (textFile != null) {
-			lastOpenDir = textFile.getParent();
-			try(PrintWriter writer = new PrintWriter(textFile)) {
-				lastSavedText = editor.getText();
-				writer.write(lastSavedText);
-			} catch(FileNotFoundException e) {
-				e.printStackTrace();
+		if (file != null) {
+			lastOpenDir = file.getParent();
+			save(tab, file, onSaved);
+		}
+	}
+
+	// Save a snapshot of the text in the background, the text can still be edited meanwhile
+	private void save(DocumentTab tab, File file, Runnable onSaved) {
+		if (tab.getFileSaver() != null) {
+			Alert alert = createFileErrorDialog("正在儲存檔案，請稍後再試");
+			alert.show();
+			return;
+		}
+
+		// The bytes which couldn't be decoded would be replaced in the file
+		if (tab.isLossy() && file.equals(tab.getFile()) && file.exists() && !showLossySaveConfirmationDialog(tab)) {
+			return;
+		}
+
+		EditorTextArea editor = tab.getEditor();
+		PieceTable snapshot = editor.getDocumentSnapshot();
+		long generation = editor.getGeneration();
+
+		tab.setFile(file);
+
+		long saveStart = System.nanoTime();
+		FileSaver saver = new FileSaver(file, snapshot, tab.getEncoding(), tab.getLineEnding());
+		saver.progressProperty().addListener((obs, oldValue, newValue) -> {
+			if (tab == document) {
+				status.setText("儲存中... " + (int)(newValue.doubleValue() * 100) + "%");
+			}
+		});
+		saver.setOnSucceeded(e -> {
+			Instrumentation.record("file.save", System.nanoTime() - saveStart, -1);
+			editor.markSavePoint(generation);
+			tab.setFileSaver(null);
+			tab.setLossy(false);
+			tab.getJournal().savePointChanged();
+			if (tab == document) {
+				updateFileStatus();
 			}
+			updateStatus(tab);
+			if (onSaved != null) {
+				onSaved.run();
+			}
+		});
+		saver.setOnFailed(e -> {
+			tab.setFileSaver(null);
+			updateStatus(tab);
+
+			Alert alert = createFileErrorDialog("無法儲存 " + file.getName() + "\n" + saver.getException().getMessage());
+			alert.show();
+		});
+
+		tab.setFileSaver(saver);
+
+		// Not a daemon, so exiting waits until the file is completely saved
+		Thread thread = new Thread(saver);
+		thread.setDaemon(false);
+		thread.start();
+	}
+
+	private void setEncoding(DocumentTab tab, FileEncoding encoding) {
+		tab.setEncoding(encoding);
+		if (tab == document) {
+			updateFileStatus();
 		}
 	}
 
-	private String[] getTotalLines() {
-		String text = editor.getText();
-		List<String> result = new ArrayList<>();
+	private void setLineEnding(DocumentTab tab, LineEnding lineEnding) {
+		tab.setLineEnding(lineEnding);
+		if (tab == document) {
+			updateFileStatus();
+		}
+	}
 
-		int beginIndex = 0;
-		int newLineIndex = text.indexOf("\n");
-		while (newLineIndex != -1) {
-			result.add(text.substring(beginIndex, newLineIndex + 1));
-			beginIndex = newLineIndex + 1;
-			newLineIndex = text.indexOf("\n", beginIndex);
+	// The text stays the same, but the file is to be saved with other line endings
+	private void convertLineEndings(LineEnding lineEnding) {
+		if (lineEnding != document.getLineEnding()) {
+			setLineEnding(document, lineEnding);
+			document.getEditor().invalidateSavePoint();
+			document.updateText();
 		}
-		result.add(text.substring(beginIndex, text.length()));
+	}
+
+	// Show the encoding and line ending of the selected tab
+	private void updateFileStatus() {
+		LineEnding lineEnding = document.getLineEnding();
+		encodingStatus.setText(document.getEncoding() + (document.isLossy() ? " (含無法解碼的位元組)" : ""));
+		lineEndingStatus.setText(lineEnding.name());
+		lineEndingGroup.selectToggle((lineEnding == LineEnding.LF) ? lf : (lineEnding == LineEnding.CRLF) ? crlf : cr);
+	}
+
+	// Enable the menu items the selected tab allows
+	private void updateMenus() {
+		boolean largeFileMode = document.getLargeFileViewer() != null;
+		boolean readOnly = document.getFileLoader() != null || document.getFileFollower() != null;
+
+		replace.setDisable(largeFileMode);
+		selectAll.setDisable(largeFileMode);
+		timeDate.setDisable(largeFileMode);
+		lineEndings.setDisable(largeFileMode);
+		saveFile.setDisable(largeFileMode || readOnly);
+		saveAs.setDisable(largeFileMode || readOnly);
+		follow.setSelected(document.isFollow());
+		updateEditMenu();
+	}
 
-		return result.toArray(new String[]{});
+	private void updateEditMenu(DocumentTab tab) {
+		if (tab == document) {
+			updateEditMenu();
+		}
+	}
+
+	private void updateEditMenu() {
+		EditorTextArea editor = document.getEditor();
+		boolean noSelection = editor.getSelectedText().isEmpty();
+
+		undo.setDisable(!editor.canUndoProperty().get());
+		redo.setDisable(!editor.canRedoProperty().get());
+		copy.setDisable(noSelection);
+		cut.setDisable(noSelection);
+		delete.setDisable(noSelection);
+	}
+
+	private void updateStatus(DocumentTab tab) {
+		if (tab == document) {
+			updateStatus();
+		}
+	}
+
+	private void updateStatus() {
+		LargeFileViewer largeFileViewer = document.getLargeFileViewer();
+		if (largeFileViewer != null) {
+			int row = Math.max(0, largeFileViewer.getSelectionModel().getSelectedIndex()) + 1;
+			status.setText("第" + row + "列，第" + largeFileViewer.getColumn() + "行");
+			return;
+		}
+
+		EditorTextArea editor = document.getEditor();
+		LineIndex lineIndex = document.getLineIndex();
+		WrapIndex wrapIndex = document.getWrapIndex();
+		int caretPosition = editor.getCaretPosition();
+		int row, col;
+		if (editor.isWrapText()) {
+			row = wrapIndex.getRowOfOffset(caretPosition) + 1;
+			col = wrapIndex.getColumnOfOffset(caretPosition) + 1;
+		} else {
+			row = lineIndex.getLineOfOffset(caretPosition) + 1;
+			col = caretPosition - lineIndex.getLineStart(row - 1) + 1;
+		}
+		status.setText("第" + row + "列，第" + col + "行");
 	}
 
 	public static void main(String[] args) {
 		launch(args);
 
-	} 
+	}
 }
@@ -0,0 +1,83 @@
+package fxeditor;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class MappedFile implements Closeable {
+
+	private static final int PAGE_SIZE = 16 * 1024 * 1024;
+	private static final int MAX_PAGES = 8;
+
+	private FileChannel channel;
+	private long size;
+
+	// The most recently used pages, the mappings live outside the heap
+	private Map<Long, MappedByteBuffer> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	public MappedFile(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		size = channel.size();
+	}
+
+	public synchronized long size() {
+		return size;
+	}
+
+	// Take up the bytes appended to the file since, return the new size
+	public synchronized long refresh() throws IOException {
+		long newSize = channel.size();
+		if (newSize != size) {
+			// The last page was mapped shorter than a page, it has to be mapped again
+			pages.remove(size / PAGE_SIZE);
+			size = newSize;
+		}
+		return size;
+	}
+
+	public synchronized byte get(long position) throws IOException {
+		MappedByteBuffer page = getPage(position / PAGE_SIZE);
+		return page.get((int)(position % PAGE_SIZE));
+	}
+
+	// Read up to length bytes, return the number of bytes read
+	public synchronized int get(long position, byte[] dst, int offset, int length) throws IOException {
+		int count = (int) Math.min(length, size - position);
+		int read = 0;
+
+		while (read < count) {
+			MappedByteBuffer page = getPage((position + read) / PAGE_SIZE);
+			int pageOffset = (int)((position + read) % PAGE_SIZE);
+			int chunk = Math.min(count - read, page.limit() - pageOffset);
+
+			page.duplicate().position(pageOffset).get(dst, offset + read, chunk);
+			read += chunk;
+		}
+
+		return read;
+	}
+
+	@Override
+	public void close() throws IOException {
+		pages.clear();
+		channel.close();
+	}
+
+	private MappedByteBuffer getPage(long index) throws IOException {
+		MappedByteBuffer page = pages.get(index);
+		if (page == null) {
+			long start = index * PAGE_SIZE;
+			page = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PAGE_SIZE, size - start));
+			pages.put(index, page);
+		}
+
+		return page;
+	}
+}
@@ -0,0 +1,283 @@
+package fxeditor;
+
+import javafx.beans.property.*;
+import javafx.concurrent.Task;
+
+import java.util.Arrays;
+
+public class MatchIndex implements TextChangeListener {
+
+	// Larger edits, such as loading a file, are scanned again in the background
+	private static final int MAX_LOCAL_CHANGE = 64 * 1024;
+
+	private EditorTextArea editor;
+	private String target;
+	private boolean isCaseSensitive, isRegex;
+	private TextSearcher searcher;
+	private RegexSearcher regexSearcher;
+
+	private Matches matches = new Matches();
+	private Task<Matches> scanner;
+	private IntegerProperty count = new SimpleIntegerProperty(this, "count", -1);
+	private BooleanProperty scanning = new SimpleBooleanProperty(this, "scanning", false);
+
+	public MatchIndex(EditorTextArea editor) {
+		this.editor = editor;
+	}
+
+	// Look for the matches in another editor, the ones found so far are forgotten
+	public void setEditor(EditorTextArea editor) {
+		stop();
+		this.editor = editor;
+	}
+
+	public void start(String target, boolean isCaseSensitive, boolean isRegex) {
+		stop();
+
+		// Compile first, so an invalid expression is reported to the caller
+		if (isRegex) {
+			regexSearcher = new RegexSearcher(target, isCaseSensitive);
+		} else {
+			searcher = new TextSearcher(target, isCaseSensitive);
+		}
+
+		this.target = target;
+		this.isCaseSensitive = isCaseSensitive;
+		this.isRegex = isRegex;
+		editor.addTextChangeListener("matchIndex", this);
+		scan();
+	}
+
+	public void stop() {
+		if (scanner != null) {
+			scanner.cancel();
+			setScanner(null);
+		}
+		if (target != null) {
+			editor.removeTextChangeListener(this);
+		}
+
+		target = null;
+		searcher = null;
+		regexSearcher = null;
+		matches = new Matches();
+		count.set(-1);
+	}
+
+	public boolean isActive(String target, boolean isCaseSensitive, boolean isRegex) {
+		return target.equals(this.target) && this.isCaseSensitive == isCaseSensitive && this.isRegex == isRegex;
+	}
+
+	public ReadOnlyBooleanProperty scanningProperty() {
+		return scanning;
+	}
+
+	public boolean isScanning() {
+		return scanning.get();
+	}
+
+	public boolean isReady() {
+		return target != null && scanner == null;
+	}
+
+	// The number of matches, -1 while scanning or when no search is active
+	public ReadOnlyIntegerProperty countProperty() {
+		return count;
+	}
+
+	public int getCount() {
+		return matches.count;
+	}
+
+	public int getStart(int index) {
+		return matches.starts[index];
+	}
+
+	public int getEnd(int index) {
+		return matches.ends[index];
+	}
+
+	// Return the first match starting at or after the offset, -1 if none
+	public int next(int offset) {
+		int low = 0;
+		int high = matches.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (matches.starts[mid] < offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return (low < matches.count) ? low : -1;
+	}
+
+	// Return the last match starting at or before the offset, -1 if none
+	public int previous(int offset) {
+		int next = next(offset + 1);
+		return (next == -1) ? matches.count - 1 : next - 1;
+	}
+
+	@Override
+	public void textChanged(int start, int end, String text) {
+		if (scanner != null || text.length() > MAX_LOCAL_CHANGE || end - start > MAX_LOCAL_CHANGE) {
+			scan();
+			return;
+		}
+
+		CharSequence document = editor.getDocument();
+		int delta = text.length() - (end - start);
+
+		// Search the edited lines again, together with the matches touching them
+		int windowStart = getLineStart(document, start);
+		int windowEnd = getLineEnd(document, start + text.length());
+
+		int first = matches.firstEndingAtOrAfter(windowStart);
+		int last = first;
+		while (last < matches.count && matches.starts[last] < windowEnd - delta) {
+			last++;
+		}
+		if (first < last) {
+			windowStart = Math.min(windowStart, matches.starts[first]);
+			windowEnd = Math.max(windowEnd, matches.ends[last - 1] + delta);
+		}
+
+		try {
+			Matches found = findMatches(document, windowStart, windowEnd, searcher, regexSearcher, null);
+			matches.replace(first, last, found, delta);
+			count.set(matches.count);
+		} catch(RegexSearcher.SearchTimeoutException e) {
+			stop();
+		}
+	}
+
+	private void scan() {
+		if (scanner != null) {
+			scanner.cancel();
+		}
+
+		// The scanner reads a snapshot and uses its own searcher, the editor keeps changing meanwhile
+		PieceTable snapshot = editor.getDocumentSnapshot();
+		TextSearcher searcher = this.searcher;
+		RegexSearcher regexSearcher = isRegex ? new RegexSearcher(target, isCaseSensitive) : null;
+
+		Task<Matches> task = new Task<Matches>() {
+			@Override
+			protected Matches call() {
+				return findMatches(snapshot, 0, snapshot.length(), searcher, regexSearcher, this);
+			}
+		};
+		task.setOnSucceeded(e -> {
+			if (scanner == task) {
+				matches = task.getValue();
+				setScanner(null);
+				count.set(matches.count);
+			}
+		});
+		task.setOnFailed(e -> {
+			if (scanner == task) {
+				stop();
+			}
+		});
+
+		count.set(-1);
+		setScanner(task);
+
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void setScanner(Task<Matches> scanner) {
+		this.scanner = scanner;
+		scanning.set(scanner != null);
+	}
+
+	// Find the matches lying in [from, to), one after the other without overlapping
+	private static Matches findMatches(CharSequence text, int from, int to, TextSearcher searcher, RegexSearcher regexSearcher, Task<?> task) {
+		Matches found = new Matches();
+
+		if (regexSearcher != null) {
+			if (regexSearcher.find(text, from, to)) {
+				do {
+					found.add(regexSearcher.start(), regexSearcher.end());
+				} while ((task == null || !task.isCancelled()) && regexSearcher.findNext());
+			}
+		} else if (searcher.getLength() > 0) {
+			int index = searcher.indexOf(text, from, to);
+			while (index != -1 && (task == null || !task.isCancelled())) {
+				found.add(index, index + searcher.getLength());
+				index = searcher.indexOf(text, index + searcher.getLength(), to);
+			}
+		}
+
+		return found;
+	}
+
+	private static int getLineStart(CharSequence text, int offset) {
+		while (offset > 0 && text.charAt(offset - 1) != '\n') {
+			offset--;
+		}
+		return offset;
+	}
+
+	private static int getLineEnd(CharSequence text, int offset) {
+		while (offset < text.length() && text.charAt(offset) != '\n') {
+			offset++;
+		}
+		return offset;
+	}
+
+	private static class Matches {
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private int count;
+
+		private void add(int start, int end) {
+			ensureCapacity(count + 1);
+			starts[count] = start;
+			ends[count] = end;
+			count++;
+		}
+
+		private int firstEndingAtOrAfter(int offset) {
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (ends[mid] < offset) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		// Replace the matches [first, last) and move the following ones by delta
+		private void replace(int first, int last, Matches found, int delta) {
+			int newCount = count - (last - first) + found.count;
+			ensureCapacity(newCount);
+
+			int tail = count - last;
+			System.arraycopy(starts, last, starts, first + found.count, tail);
+			System.arraycopy(ends, last, ends, first + found.count, tail);
+			for (int i = first + found.count; i < newCount; i++) {
+				starts[i] += delta;
+				ends[i] += delta;
+			}
+
+			System.arraycopy(found.starts, 0, starts, first, found.count);
+			System.arraycopy(found.ends, 0, ends, first, found.count);
+			count = newCount;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > starts.length) {
+				int newLength = Math.max(capacity, starts.length * 2);
+				starts = Arrays.copyOf(starts, newLength);
+				ends = Arrays.copyOf(ends, newLength);
+			}
+		}
+	}
+}
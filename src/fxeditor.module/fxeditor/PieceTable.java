@@ -0,0 +1,308 @@
+package fxeditor;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class PieceTable implements CharSequence {
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	// The original text is never modified, all inserted text is appended to the
+	// add buffer and the document is described by the pieces of both buffers.
+	// The add buffer is made of fixed chunks that never move, so a snapshot can
+	// share both buffers and be read from another thread.
+	private String original;
+	private char[][] chunks = new char[0][];
+	private int addedLength;
+	private int length;
+
+	// The pieces in document order, kept in a treap where every node knows the length of
+	// its subtree, so an offset is found and an edit is made in logarithmic time. Nodes are
+	// never modified, an edit copies the path it changes and a snapshot shares the tree.
+	private Node root;
+
+	// The piece found by the last lookup, so sequential access doesn't search the tree again
+	private Node cachedPiece;
+	private int cachedPieceStart;
+
+	public PieceTable(String original) {
+		this.original = original;
+		length = original.length();
+
+		if (length > 0) {
+			root = new Node(false, 0, length);
+		}
+	}
+
+	private PieceTable(PieceTable source) {
+		original = source.original;
+		chunks = source.chunks.clone();
+		addedLength = source.addedLength;
+		root = source.root;
+		length = source.length;
+	}
+
+	// Return a copy of the current text which is not affected by later edits
+	public PieceTable snapshot() {
+		return new PieceTable(this);
+	}
+
+	public void replace(int start, int end, String text) {
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException("Invalid range: " + start + " to " + end);
+		}
+
+		Node[] head = split(root, start);
+		Node[] tail = split(head[1], end - start);
+		Node before = head[0];
+
+		if (!text.isEmpty()) {
+			Node previous = (before != null) ? getLast(before) : null;
+
+			// Extend the previous piece when typing continues right after it
+			if (previous != null && previous.added && previous.start + previous.length == addedLength) {
+				before = extendLast(before, text.length());
+			} else {
+				before = merge(before, new Node(true, addedLength, text.length()));
+			}
+			append(text);
+		}
+
+		root = merge(before, tail[1]);
+		cachedPiece = null;
+		length += text.length() - (end - start);
+	}
+
+	public void insert(int offset, String text) {
+		replace(offset, offset, text);
+	}
+
+	public void delete(int start, int end) {
+		replace(start, end, "");
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+
+		Node piece = findPiece(index);
+		int position = piece.start + index - cachedPieceStart;
+
+		if (piece.added) {
+			return chunks[position >>> CHUNK_SHIFT][position & (CHUNK_SIZE - 1)];
+		} else {
+			return original.charAt(position);
+		}
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		char[] chars = new char[end - start];
+		getChars(start, end, chars, 0);
+
+		return new String(chars);
+	}
+
+	public void getChars(int start, int end, char[] dst, int dstBegin) {
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException("Invalid range: " + start + " to " + end);
+		}
+
+		int offset = start;
+		while (offset < end) {
+			Node piece = findPiece(offset);
+			int pieceOffset = offset - cachedPieceStart;
+			int count = Math.min(piece.length - pieceOffset, end - offset);
+
+			getChars(piece, pieceOffset, pieceOffset + count, dst, dstBegin + offset - start);
+			offset += count;
+		}
+	}
+
+	public void writeTo(Writer writer) throws IOException {
+		writeTo(root, writer);
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length).toString();
+	}
+
+	private void writeTo(Node node, Writer writer) throws IOException {
+		if (node == null) {
+			return;
+		}
+
+		writeTo(node.left, writer);
+		if (node.added) {
+			// Write the chunks directly, a piece may span several of them
+			int position = node.start;
+			int end = node.start + node.length;
+			while (position < end) {
+				int offset = position & (CHUNK_SIZE - 1);
+				int count = Math.min(CHUNK_SIZE - offset, end - position);
+
+				writer.write(chunks[position >>> CHUNK_SHIFT], offset, count);
+				position += count;
+			}
+		} else {
+			writer.write(original, node.start, node.length);
+		}
+		writeTo(node.right, writer);
+	}
+
+	private void append(String text) {
+		int offset = 0;
+		while (offset < text.length()) {
+			int chunk = addedLength >>> CHUNK_SHIFT;
+			if (chunk == chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunks.length + 1);
+				chunks[chunk] = new char[CHUNK_SIZE];
+			}
+
+			int chunkOffset = addedLength & (CHUNK_SIZE - 1);
+			int count = Math.min(CHUNK_SIZE - chunkOffset, text.length() - offset);
+
+			text.getChars(offset, offset + count, chunks[chunk], chunkOffset);
+			offset += count;
+			addedLength += count;
+		}
+	}
+
+	private Node findPiece(int offset) {
+		if (cachedPiece != null && offset >= cachedPieceStart && offset < cachedPieceStart + cachedPiece.length) {
+			return cachedPiece;
+		}
+
+		Node node = root;
+		int nodeStart = 0;
+		while (true) {
+			int pieceStart = nodeStart + getLength(node.left);
+			if (offset < pieceStart) {
+				node = node.left;
+			} else if (offset >= pieceStart + node.length) {
+				nodeStart = pieceStart + node.length;
+				node = node.right;
+			} else {
+				cachedPiece = node;
+				cachedPieceStart = pieceStart;
+				return node;
+			}
+		}
+	}
+
+	private void getChars(Node piece, int begin, int end, char[] dst, int dstBegin) {
+		if (!piece.added) {
+			original.getChars(piece.start + begin, piece.start + end, dst, dstBegin);
+			return;
+		}
+
+		int position = piece.start + begin;
+		int count = end - begin;
+		while (count > 0) {
+			int offset = position & (CHUNK_SIZE - 1);
+			int chunkCount = Math.min(CHUNK_SIZE - offset, count);
+
+			System.arraycopy(chunks[position >>> CHUNK_SHIFT], offset, dst, dstBegin, chunkCount);
+			position += chunkCount;
+			dstBegin += chunkCount;
+			count -= chunkCount;
+		}
+	}
+
+	// Split the tree into the pieces before the offset and the ones after it, the piece
+	// containing the offset is cut in two
+	private static Node[] split(Node node, int offset) {
+		if (node == null || offset == 0) {
+			return new Node[] { null, node };
+		}
+		if (offset >= node.totalLength) {
+			return new Node[] { node, null };
+		}
+
+		int leftLength = getLength(node.left);
+		int pieceOffset = offset - leftLength;
+		if (pieceOffset <= 0) {
+			Node[] parts = split(node.left, offset);
+			return new Node[] { parts[0], node.withChildren(parts[1], node.right) };
+		} else if (pieceOffset >= node.length) {
+			Node[] parts = split(node.right, pieceOffset - node.length);
+			return new Node[] { node.withChildren(node.left, parts[0]), parts[1] };
+		}
+
+		// Both halves keep the priority of the piece, so the children stay below them
+		Node head = new Node(node.added, node.start, pieceOffset, node.priority, node.left, null);
+		Node tail = new Node(node.added, node.start + pieceOffset, node.length - pieceOffset, node.priority, null, node.right);
+		return new Node[] { head, tail };
+	}
+
+	// Join two trees, all the pieces of the left one come first
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority >= right.priority) {
+			return left.withChildren(left.left, merge(left.right, right));
+		} else {
+			return right.withChildren(merge(left, right.left), right.right);
+		}
+	}
+
+	private static Node getLast(Node node) {
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	// Lengthen the last piece of the tree by the text appended to the add buffer right after it
+	private static Node extendLast(Node node, int extra) {
+		if (node.right != null) {
+			return node.withChildren(node.left, extendLast(node.right, extra));
+		}
+		return new Node(node.added, node.start, node.length + extra, node.priority, node.left, null);
+	}
+
+	private static int getLength(Node node) {
+		return (node != null) ? node.totalLength : 0;
+	}
+
+	private static class Node {
+		private final boolean added;
+		private final int start;
+		private final int length;
+
+		// A random priority keeps the tree balanced, a parent's is never below its children's
+		private final int priority;
+		private final Node left, right;
+		private final int totalLength;
+
+		private Node(boolean added, int start, int length) {
+			this(added, start, length, ThreadLocalRandom.current().nextInt(), null, null);
+		}
+
+		private Node(boolean added, int start, int length, int priority, Node left, Node right) {
+			this.added = added;
+			this.start = start;
+			this.length = length;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			totalLength = getLength(left) + length + getLength(right);
+		}
+
+		private Node withChildren(Node left, Node right) {
+			return new Node(added, start, length, priority, left, right);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package fxeditor;
+
+import java.util.*;
+
+public class PrefixIndex {
+
+	private static final Node EMPTY = new Node();
+
+	// The names sorted ignoring case, so the names sharing a prefix are next to each other
+	private List<String> names;
+	private Node root;
+
+	// A trie of the names ignoring case. Every node knows the range of the names starting
+	// with its prefix, so a lookup only walks the prefix.
+	public PrefixIndex(Collection<String> names) {
+		String[] sorted = names.toArray(new String[0]);
+		Arrays.sort(sorted, Comparator.comparing(PrefixIndex::fold).thenComparing(Comparator.naturalOrder()));
+		this.names = Collections.unmodifiableList(Arrays.asList(sorted));
+
+		root = new Node();
+		build(root, sorted, 0, sorted.length, 0);
+	}
+
+	public List<String> getNames() {
+		return names;
+	}
+
+	// The names starting with the prefix, ignoring case
+	public List<String> getNamesStartingWith(String prefix) {
+		Node node = find(prefix);
+		return names.subList(node.first, node.first + node.count);
+	}
+
+	// The first name starting with the prefix, ignoring case, null if none
+	public String complete(String prefix) {
+		Node node = find(prefix);
+		return (node.count > 0) ? names.get(node.first) : null;
+	}
+
+	// The name equal to the given one ignoring case, null if none
+	public String getName(String name) {
+		Node node = find(name);
+		return (node.exact != -1) ? names.get(node.exact) : null;
+	}
+
+	private Node find(String prefix) {
+		Node node = root;
+		for (int i = 0; i < prefix.length() && node != EMPTY; i++) {
+			node = node.getChild(Character.toLowerCase(prefix.charAt(i)));
+		}
+		return node;
+	}
+
+	private void build(Node node, String[] sorted, int from, int to, int depth) {
+		node.first = from;
+		node.count = to - from;
+
+		// The names ending here come first
+		while (from < to && sorted[from].length() == depth) {
+			if (node.exact == -1) {
+				node.exact = from;
+			}
+			from++;
+		}
+
+		List<Character> keys = new ArrayList<>();
+		List<Node> children = new ArrayList<>();
+		while (from < to) {
+			char key = Character.toLowerCase(sorted[from].charAt(depth));
+			int end = from + 1;
+			while (end < to && Character.toLowerCase(sorted[end].charAt(depth)) == key) {
+				end++;
+			}
+
+			Node child = new Node();
+			build(child, sorted, from, end, depth + 1);
+			keys.add(key);
+			children.add(child);
+			from = end;
+		}
+
+		node.keys = new char[keys.size()];
+		for (int i = 0; i < node.keys.length; i++) {
+			node.keys[i] = keys.get(i);
+		}
+		node.children = children.toArray(new Node[0]);
+	}
+
+	// Lower case every character on its own, so the length doesn't change
+	private static String fold(String name) {
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	private static class Node {
+		// The children in order of their character
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+
+		private int first;
+		private int count;
+		private int exact = -1;
+
+		private Node getChild(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			return (index >= 0) ? children[index] : EMPTY;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package fxeditor;
+
+import java.util.*;
+import java.util.regex.*;
+
+public class RegexSearcher {
+
+	private static final int MAX_CACHED_PATTERNS = 32;
+	private static final long TIMEOUT = 3_000_000_000L;
+	private static final int BACKWARD_WINDOW = 4 * 1024;
+
+	// The compiled patterns keyed by flags and expression, least recently used first. The
+	// searchers of the background scans compile through it as well, so it is synchronized.
+	private static Map<String, Pattern> patterns = new LinkedHashMap<>(MAX_CACHED_PATTERNS, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > MAX_CACHED_PATTERNS;
+		}
+	};
+
+	private String regex;
+	private boolean isCaseSensitive;
+	private Pattern pattern;
+	private Matcher matcher;
+	private InterruptibleCharSequence text;
+	private boolean found;
+
+	public RegexSearcher(String regex, boolean isCaseSensitive) {
+		this.regex = regex;
+		this.isCaseSensitive = isCaseSensitive;
+		pattern = compile(regex, isCaseSensitive);
+	}
+
+	public static synchronized Pattern compile(String regex, boolean isCaseSensitive) {
+		int flags = Pattern.MULTILINE;
+		if (!isCaseSensitive) {
+			flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		}
+
+		String key = flags + ":" + regex;
+		Pattern pattern = patterns.get(key);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex, flags);
+			patterns.put(key, pattern);
+		}
+
+		return pattern;
+	}
+
+	public boolean matches(String regex, boolean isCaseSensitive) {
+		return this.regex.equals(regex) && this.isCaseSensitive == isCaseSensitive;
+	}
+
+	// Find the first match starting at or after from
+	public boolean find(CharSequence text, int from) {
+		return find(text, from, text.length());
+	}
+
+	// Find the first match lying in [from, to), the text around it is still visible to lookarounds
+	public boolean find(CharSequence text, int from, int to) {
+		if (from < 0 || from > to) {
+			found = false;
+			return false;
+		}
+
+		this.text = new InterruptibleCharSequence(text);
+		matcher = pattern.matcher(this.text);
+		matcher.region(from, to);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		found = matcher.find();
+
+		return found;
+	}
+
+	// Find the next match after the current one
+	public boolean findNext() {
+		text.restartTimer();
+		found = matcher.find();
+
+		return found;
+	}
+
+	// Find the last match starting at or before from. The text before from is searched in
+	// windows doubling in size, so a match close by is found without scanning from the start.
+	public boolean findBackward(CharSequence text, int from) {
+		if (from < 0) {
+			found = false;
+			return false;
+		}
+
+		this.text = new InterruptibleCharSequence(text);
+		matcher = pattern.matcher(this.text);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+
+		int start = -1;
+		int windowStart = from + 1;
+		long windowSize = BACKWARD_WINDOW;
+		while (start == -1 && windowStart > 0) {
+			// The window reaches as far past from, for the matches starting before it
+			windowStart = (int) Math.max(0, from + 1 - windowSize);
+			int windowEnd = (int) Math.min(text.length(), from + 1 + windowSize);
+			matcher.region(windowStart, windowEnd);
+			while (matcher.find() && matcher.start() <= from) {
+				start = matcher.start();
+			}
+			windowSize *= 2;
+		}
+
+		// Match again at the last start so the groups are those of the found match
+		found = start != -1 && matcher.find(start);
+
+		return found;
+	}
+
+	public boolean hasMatch() {
+		return found;
+	}
+
+	public int start() {
+		return matcher.start();
+	}
+
+	public int end() {
+		return matcher.end();
+	}
+
+	// Expand the group references in the replacement for the current match, as Matcher.appendReplacement
+	// does. An invalid reference, or one to a missing group, is an IllegalArgumentException.
+	public String getReplacement(String replacement) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < replacement.length(); i++) {
+			char c = replacement.charAt(i);
+			if ((c == '\\' || c == '$') && i + 1 == replacement.length()) {
+				throw new IllegalArgumentException((c == '$') ? "Illegal group reference: group index is missing" : "character to be escaped is missing");
+			} else if (c == '\\') {
+				result.append(replacement.charAt(++i));
+			} else if (c == '$' && replacement.charAt(i + 1) == '{') {
+				int close = replacement.indexOf('}', i);
+				if (close == -1) {
+					throw new IllegalArgumentException("Named capturing group is missing trailing '}'");
+				}
+				appendGroup(result, matcher.group(replacement.substring(i + 2, close)));
+				i = close;
+			} else if (c == '$' && replacement.charAt(i + 1) >= '0' && replacement.charAt(i + 1) <= '9') {
+				int group = replacement.charAt(++i) - '0';
+
+				// Take more digits as long as they still name an existing group
+				while (i + 1 < replacement.length() && replacement.charAt(i + 1) >= '0' && replacement.charAt(i + 1) <= '9') {
+					int next = group * 10 + replacement.charAt(i + 1) - '0';
+					if (next > matcher.groupCount()) {
+						break;
+					}
+					group = next;
+					i++;
+				}
+				if (group > matcher.groupCount()) {
+					throw new IllegalArgumentException("No group " + group);
+				}
+				appendGroup(result, matcher.group(group));
+			} else if (c == '$') {
+				throw new IllegalArgumentException("Illegal group reference");
+			} else {
+				result.append(c);
+			}
+		}
+
+		return result.toString();
+	}
+
+	// Every match in the text with the group references of the replacement expanded for it,
+	// for replace all. A replacement without references is shared by all the matches.
+	Replacements findReplacements(CharSequence text, String replacement) {
+		Replacements replacements = new Replacements();
+		boolean isLiteral = replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1;
+		if (find(text, 0)) {
+			do {
+				replacements.add(start(), end(), isLiteral ? replacement : getReplacement(replacement));
+			} while (findNext());
+		}
+		return replacements;
+	}
+
+	private void appendGroup(StringBuilder result, String group) {
+		if (group != null) {
+			result.append(group);
+		}
+	}
+
+	public static class SearchTimeoutException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public SearchTimeoutException() {
+			super("The search took too long");
+		}
+	}
+
+	// Stop a runaway expression once the deadline has passed
+	private static class InterruptibleCharSequence implements CharSequence {
+		private CharSequence text;
+		private long deadline;
+		private int count;
+
+		private InterruptibleCharSequence(CharSequence text) {
+			this.text = text;
+			restartTimer();
+		}
+
+		private void restartTimer() {
+			deadline = System.nanoTime() + TIMEOUT;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if ((++count & 0xFFFF) == 0 && (System.nanoTime() > deadline || Thread.currentThread().isInterrupted())) {
+				throw new SearchTimeoutException();
+			}
+			return text.charAt(index);
+		}
+
+		@Override
+		public int length() {
+			return text.length();
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return text.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+}
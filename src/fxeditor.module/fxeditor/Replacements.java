@@ -0,0 +1,48 @@
+package fxeditor;
+
+import java.util.Arrays;
+
+// The ranges of the text to be replaced by replace all and their replacements, in order
+// and not overlapping
+public class Replacements {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] starts = new int[INITIAL_CAPACITY];
+	private int[] ends = new int[INITIAL_CAPACITY];
+	private String[] texts = new String[INITIAL_CAPACITY];
+	private int size;
+
+	public void add(int start, int end, String text) {
+		if (size > 0 && start < ends[size - 1]) {
+			throw new IllegalArgumentException("Overlapping range: " + start);
+		}
+
+		if (size == starts.length) {
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		texts[size] = text;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getStart(int index) {
+		return starts[index];
+	}
+
+	public int getEnd(int index) {
+		return ends[index];
+	}
+
+	public String getText(int index) {
+		return texts[index];
+	}
+}
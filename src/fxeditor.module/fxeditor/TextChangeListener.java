@@ -0,0 +1,7 @@
+package fxeditor;
+
+@FunctionalInterface
+public interface TextChangeListener {
+	// The range [start, end) of the old text has been replaced by text
+	void textChanged(int start, int end, String text);
+}
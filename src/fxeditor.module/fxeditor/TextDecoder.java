@@ -0,0 +1,146 @@
+package fxeditor;
+
+import javafx.application.Platform;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.function.*;
+
+// Decodes the bytes of a file for the file loader and follower, turns CRLF and CR into LF,
+// since the text area would strip the CR otherwise, and hands the text to the consumer on
+// the FX thread. The line endings are counted on the way, and so are the bytes which can't
+// be decoded, since saving would write the replacement characters instead of them.
+public class TextDecoder {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_PENDING_SIZE = 4 * 1024 * 1024;
+
+	private CharsetDecoder decoder;
+	private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private Consumer<String> consumer;
+	private BooleanSupplier isCancelled;
+
+	// The decoded text not yet handed to the consumer on the FX thread
+	private StringBuilder pending = new StringBuilder();
+	private boolean flushScheduled;
+	private boolean lastWasReturn;
+	private LineEnding.Counter lineEndings;
+	private long replacements;
+
+	// afterReturn tells that the text before ended with a CR, so a LF first completes a CRLF
+	public TextDecoder(Charset charset, boolean afterReturn, Consumer<String> consumer, BooleanSupplier isCancelled) {
+		this.consumer = consumer;
+		this.isCancelled = isCancelled;
+		lastWasReturn = afterReturn;
+		lineEndings = new LineEnding.Counter(afterReturn);
+		decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+	}
+
+	// Decode the bytes, an incomplete character at the end stays in the buffer until the
+	// rest of it is there, unless it is the end of the input. The bytes which can't be
+	// decoded are replaced and counted.
+	public void decode(ByteBuffer bytes, boolean endOfInput) throws InterruptedException {
+		CoderResult result;
+		do {
+			result = decoder.decode(bytes, chars, endOfInput);
+			if (result.isError()) {
+				if (chars.remaining() < decoder.replacement().length()) {
+					append();
+				}
+				chars.put(decoder.replacement());
+				bytes.position(bytes.position() + result.length());
+				synchronized (this) {
+					replacements++;
+				}
+			}
+			append();
+		} while (result.isOverflow() || result.isError());
+	}
+
+	// Decode what is left at the end of the input, a CR at the end is a line ending of its own
+	public void finish() throws InterruptedException {
+		while (decoder.flush(chars).isOverflow()) {
+			append();
+		}
+		append();
+
+		synchronized (this) {
+			lineEndings.finish();
+		}
+	}
+
+	// Whether the text ends with a CR, a LF decoded later completes a CRLF
+	public synchronized boolean endsWithReturn() {
+		return lastWasReturn;
+	}
+
+	// The most frequent line ending, null if there is none
+	public synchronized LineEnding getLineEnding() {
+		return lineEndings.getMostFrequent();
+	}
+
+	// The number of byte sequences which couldn't be decoded and were replaced
+	public synchronized long getReplacementCount() {
+		return replacements;
+	}
+
+	private synchronized void append() throws InterruptedException {
+		char[] array = chars.array();
+		int end = chars.position();
+		int start = 0;
+		chars.clear();
+
+		if (end == 0) {
+			return;
+		}
+		lineEndings.count(array, 0, end);
+
+		if (lastWasReturn && array[0] == '\n') {
+			start = 1;
+		}
+		lastWasReturn = false;
+
+		for (int i = start; i < end; i++) {
+			if (array[i] == '\r') {
+				pending.append(array, start, i - start).append('\n');
+				if (i + 1 == end) {
+					lastWasReturn = true;
+				} else if (array[i + 1] == '\n') {
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		pending.append(array, start, end - start);
+		publish();
+	}
+
+	// Hand the pending text to the FX thread, the first buffer is published at once so the
+	// first screen shows up quickly. Block while the FX thread hasn't caught up.
+	private synchronized void publish() throws InterruptedException {
+		while (pending.length() >= MAX_PENDING_SIZE) {
+			wait();
+		}
+
+		if (!flushScheduled && pending.length() > 0) {
+			flushScheduled = true;
+			Platform.runLater(this::flush);
+		}
+	}
+
+	private void flush() {
+		String chunk;
+		synchronized (this) {
+			chunk = pending.toString();
+			pending.setLength(0);
+			flushScheduled = false;
+			notifyAll();
+		}
+
+		if (!isCancelled.getAsBoolean()) {
+			consumer.accept(chunk);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package fxeditor;
+
+import java.util.Arrays;
+
+public class TextSearcher {
+
+	private static final int TABLE_SIZE = 256;
+
+	private String target;
+	private boolean isCaseSensitive;
+	private char[] pattern;
+
+	// Boyer-Moore-Horspool shifts, indexed by the low byte of a character. Characters
+	// sharing a slot take the smallest shift, so no match can be skipped.
+	private int[] forwardShifts = new int[TABLE_SIZE];
+	private int[] backwardShifts = new int[TABLE_SIZE];
+
+	public TextSearcher(String target, boolean isCaseSensitive) {
+		this.target = target;
+		this.isCaseSensitive = isCaseSensitive;
+
+		int length = target.length();
+		pattern = new char[length];
+		for (int i = 0; i < length; i++) {
+			pattern[i] = fold(target.charAt(i));
+		}
+
+		Arrays.fill(forwardShifts, Math.max(1, length));
+		for (int i = 0; i < length - 1; i++) {
+			int slot = pattern[i] % TABLE_SIZE;
+			forwardShifts[slot] = Math.min(forwardShifts[slot], length - 1 - i);
+		}
+
+		Arrays.fill(backwardShifts, Math.max(1, length));
+		for (int i = length - 1; i > 0; i--) {
+			int slot = pattern[i] % TABLE_SIZE;
+			backwardShifts[slot] = Math.min(backwardShifts[slot], i);
+		}
+	}
+
+	public boolean matches(String target, boolean isCaseSensitive) {
+		return this.target.equals(target) && this.isCaseSensitive == isCaseSensitive;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public int getLength() {
+		return pattern.length;
+	}
+
+	// Return the index of the first match starting at or after from, -1 if none
+	public int indexOf(CharSequence text, int from) {
+		return indexOf(text, from, text.length());
+	}
+
+	// Return the index of the first match lying in [from, to), -1 if none
+	public int indexOf(CharSequence text, int from, int to) {
+		int length = pattern.length;
+		int last = to - length;
+		int index = Math.max(0, from);
+
+		while (index <= last) {
+			int i = length - 1;
+			while (i >= 0 && fold(text.charAt(index + i)) == pattern[i]) {
+				i--;
+			}
+			if (i < 0) {
+				return index;
+			}
+			index += forwardShifts[fold(text.charAt(index + length - 1)) % TABLE_SIZE];
+		}
+
+		return -1;
+	}
+
+	// Return the index of the last match starting at or before from, -1 if none
+	public int lastIndexOf(CharSequence text, int from) {
+		int length = pattern.length;
+		int index = Math.min(from, text.length() - length);
+
+		while (index >= 0) {
+			int i = 0;
+			while (i < length && fold(text.charAt(index + i)) == pattern[i]) {
+				i++;
+			}
+			if (i == length) {
+				return index;
+			}
+			index -= backwardShifts[fold(text.charAt(index)) % TABLE_SIZE];
+		}
+
+		return -1;
+	}
+
+	// Every match in the text with the replacement for it, for replace all
+	Replacements findReplacements(CharSequence text, String replacement) {
+		Replacements replacements = new Replacements();
+		if (pattern.length == 0) {
+			return replacements;
+		}
+
+		int index = indexOf(text, 0);
+		while (index != -1) {
+			replacements.add(index, index + pattern.length, replacement);
+			index = indexOf(text, index + pattern.length);
+		}
+		return replacements;
+	}
+
+	private char fold(char c) {
+		return isCaseSensitive ? c : Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
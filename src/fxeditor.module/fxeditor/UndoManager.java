@@ -0,0 +1,320 @@
+package fxeditor;
+
+import javafx.beans.property.*;
+
+import java.util.*;
+
+public class UndoManager {
+
+	// The approximate memory of an edit besides its characters, and of a part of a compound
+	// edit and a string it doesn't share with the part before
+	private static final int EDIT_OVERHEAD = 64;
+	private static final int PART_OVERHEAD = 24;
+	private static final int STRING_OVERHEAD = 40;
+
+	// The most recent edit is first
+	private Deque<Edit> undoStack = new ArrayDeque<>();
+	private Deque<Edit> redoStack = new ArrayDeque<>();
+
+	private long memoryLimit;
+	private long memoryUsed;
+
+	private ReadOnlyBooleanWrapper undoable = new ReadOnlyBooleanWrapper();
+	private ReadOnlyBooleanWrapper redoable = new ReadOnlyBooleanWrapper();
+
+	// The history holds at most about the given number of bytes, the oldest edits are
+	// forgotten first. The last edit is kept even when it is larger on its own.
+	public UndoManager(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	public void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		trim();
+	}
+
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	public ReadOnlyBooleanProperty undoableProperty() {
+		return undoable.getReadOnlyProperty();
+	}
+
+	public ReadOnlyBooleanProperty redoableProperty() {
+		return redoable.getReadOnlyProperty();
+	}
+
+	// Record that the text between start and start + removed.length() was replaced with the
+	// inserted text, moving it from one generation to another. Typing or deleting one
+	// character after another is joined into the previous edit, a word at a time, unless
+	// merging isn't allowed, such as right after the text was saved.
+	public void record(int start, String removed, String inserted, long generationBefore, long generationAfter, boolean canMerge) {
+		clearRedo();
+
+		Edit last = undoStack.peekFirst();
+		if (canMerge && last != null && last.generationAfter == generationBefore) {
+			long size = last.size();
+			if (last.merge(start, removed, inserted)) {
+				last.generationAfter = generationAfter;
+				memoryUsed += last.size() - size;
+				trim();
+				return;
+			}
+		}
+
+		push(new Edit(start, removed, inserted, generationBefore, generationAfter));
+	}
+
+	// Record replace all, which replaced the ranges of the text before with the replacements.
+	// Only the replaced parts are kept, the text between them is the same before and after,
+	// so the history doesn't hold a copy of the whole replaced span.
+	public void record(Replacements replacements, CharSequence before, long generationBefore, long generationAfter) {
+		clearRedo();
+		push(new Edit(replacements, before, generationBefore, generationAfter));
+	}
+
+	private void push(Edit edit) {
+		undoStack.push(edit);
+		memoryUsed += edit.size();
+		trim();
+	}
+
+	// The edit to revert, null if there is none
+	public Edit undo() {
+		Edit edit = undoStack.pollFirst();
+		if (edit != null) {
+			redoStack.push(edit);
+			closeLast();
+			update();
+		}
+		return edit;
+	}
+
+	// The edit to apply again, null if there is none
+	public Edit redo() {
+		Edit edit = redoStack.pollFirst();
+		if (edit != null) {
+			undoStack.push(edit);
+			closeLast();
+			update();
+		}
+		return edit;
+	}
+
+	// Stop the last edit from taking in the following ones
+	private void closeLast() {
+		Edit last = undoStack.peekFirst();
+		if (last != null) {
+			last.closed = true;
+		}
+	}
+
+	public void clear() {
+		undoStack.clear();
+		redoStack.clear();
+		memoryUsed = 0;
+		update();
+	}
+
+	private void clearRedo() {
+		for (Edit edit : redoStack) {
+			memoryUsed -= edit.size();
+		}
+		redoStack.clear();
+	}
+
+	// Forget the oldest edits until the history fits in the memory limit. The last edit
+	// stays, so the edit just made can always be undone.
+	private void trim() {
+		while (memoryUsed > memoryLimit && undoStack.size() > 1) {
+			memoryUsed -= undoStack.removeLast().size();
+		}
+		while (memoryUsed > memoryLimit && !redoStack.isEmpty()) {
+			memoryUsed -= redoStack.removeLast().size();
+		}
+		update();
+	}
+
+	private void update() {
+		undoable.set(!undoStack.isEmpty());
+		redoable.set(!redoStack.isEmpty());
+	}
+
+	// Whether the character begins a new word when typed or deleted after the previous one
+	private static boolean isWordBoundary(char previous, char c) {
+		return Character.isWhitespace(previous) && !Character.isWhitespace(c);
+	}
+
+	public static class Edit {
+		private int start;
+		private long generationBefore;
+		private long generationAfter;
+		private boolean closed;
+
+		// A simple edit keeps the removed and inserted text. The characters removed with
+		// backspace are kept in reverse, so a run of them isn't copied again and again.
+		private StringBuilder removed;
+		private StringBuilder removedBackward;
+		private StringBuilder inserted;
+
+		// A compound edit only keeps the replaced parts, at offsets from the start in the
+		// text before the edit
+		private int[] offsets;
+		private String[] removedParts;
+		private String[] insertedParts;
+		private int removedLength;
+		private int insertedLength;
+		private long size;
+
+		private Edit(int start, String removed, String inserted, long generationBefore, long generationAfter) {
+			this.start = start;
+			this.removed = new StringBuilder(removed);
+			this.removedBackward = new StringBuilder();
+			this.inserted = new StringBuilder(inserted);
+			this.generationBefore = generationBefore;
+			this.generationAfter = generationAfter;
+		}
+
+		private Edit(Replacements replacements, CharSequence before, long generationBefore, long generationAfter) {
+			int count = replacements.size();
+			start = replacements.getStart(0);
+			offsets = new int[count];
+			removedParts = new String[count];
+			insertedParts = new String[count];
+			removedLength = replacements.getEnd(count - 1) - start;
+			insertedLength = removedLength;
+			size = EDIT_OVERHEAD;
+
+			// The matches of a literal target are mostly the same text, they share one string
+			String lastRemoved = null;
+			for (int i = 0; i < count; i++) {
+				String part = before.subSequence(replacements.getStart(i), replacements.getEnd(i)).toString();
+				if (part.equals(lastRemoved)) {
+					part = lastRemoved;
+				} else {
+					lastRemoved = part;
+					size += STRING_OVERHEAD + 2L * part.length();
+				}
+
+				offsets[i] = replacements.getStart(i) - start;
+				removedParts[i] = part;
+				insertedParts[i] = replacements.getText(i);
+				if (i == 0 || insertedParts[i] != insertedParts[i - 1]) {
+					size += STRING_OVERHEAD + 2L * insertedParts[i].length();
+				}
+				size += PART_OVERHEAD;
+				insertedLength += insertedParts[i].length() - part.length();
+			}
+
+			this.generationBefore = generationBefore;
+			this.generationAfter = generationAfter;
+			closed = true;
+		}
+
+		private boolean merge(int start, String removed, String inserted) {
+			if (closed || offsets != null) {
+				return false;
+			}
+
+			// Typing, the inserted character follows the text inserted so far
+			if (removed.isEmpty() && inserted.length() == 1 && this.inserted.length() > 0
+					&& start == this.start + this.inserted.length()
+					&& !isWordBoundary(this.inserted.charAt(this.inserted.length() - 1), inserted.charAt(0))) {
+				this.inserted.append(inserted);
+				return true;
+			}
+
+			if (!inserted.isEmpty() || removed.length() != 1 || this.inserted.length() > 0) {
+				return false;
+			}
+
+			// Backspace, the removed character precedes the text removed so far
+			if (start + 1 == this.start && !isWordBoundary(removed.charAt(0), getRemovedChar(0))) {
+				removedBackward.append(removed);
+				this.start = start;
+				return true;
+			}
+
+			// Delete, the removed character followed the text removed so far
+			if (start == this.start && !isWordBoundary(getRemovedChar(getRemovedLength() - 1), removed.charAt(0))) {
+				this.removed.append(removed);
+				return true;
+			}
+
+			return false;
+		}
+
+		private char getRemovedChar(int index) {
+			int backward = removedBackward.length();
+			return (index < backward) ? removedBackward.charAt(backward - 1 - index) : removed.charAt(index - backward);
+		}
+
+		private long size() {
+			if (offsets != null) {
+				return size;
+			}
+			return EDIT_OVERHEAD + 2L * (getRemovedLength() + getInsertedLength());
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getRemovedLength() {
+			return (offsets != null) ? removedLength : removedBackward.length() + removed.length();
+		}
+
+		public int getInsertedLength() {
+			return (offsets != null) ? insertedLength : inserted.length();
+		}
+
+		// The text the edit removed, a compound edit takes the rest of it from the text after the edit
+		public String getRemoved(CharSequence after) {
+			if (offsets != null) {
+				return rebuild(after, insertedParts, removedParts, insertedLength, removedLength);
+			}
+			if (removedBackward.length() == 0) {
+				return removed.toString();
+			}
+			return new StringBuilder(removedBackward).reverse().append(removed).toString();
+		}
+
+		// The text the edit inserted, a compound edit takes the rest of it from the text before the edit
+		public String getInserted(CharSequence before) {
+			if (offsets != null) {
+				return rebuild(before, removedParts, insertedParts, removedLength, insertedLength);
+			}
+			return inserted.toString();
+		}
+
+		// Put the target parts in place of the source parts of the span in the text
+		private String rebuild(CharSequence text, String[] sourceParts, String[] targetParts, int sourceLength, int targetLength) {
+			StringBuilder result = new StringBuilder(targetLength);
+			int cursor = start;
+			int shift = 0;
+			for (int i = 0; i < offsets.length; i++) {
+				int position = start + offsets[i] + shift;
+				result.append(text, cursor, position).append(targetParts[i]);
+				cursor = position + sourceParts[i].length();
+				shift += sourceParts[i].length() - removedParts[i].length();
+			}
+			result.append(text, cursor, start + sourceLength);
+			return result.toString();
+		}
+
+		// The generation of the text before the edit
+		public long getGenerationBefore() {
+			return generationBefore;
+		}
+
+		// The generation of the text after the edit
+		public long getGenerationAfter() {
+			return generationAfter;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package fxeditor;
+
+import javafx.geometry.Point2D;
+import javafx.scene.text.*;
+
+import java.util.Arrays;
+
+public class WrapIndex implements TextChangeListener {
+
+	private EditorTextArea editor;
+	private LineIndex lineIndex;
+
+	// Lays out the lines the same way the text area does
+	private Text measure = new Text();
+	private double lineHeight;
+	private double wrappingWidth;
+
+	// For every line, its width without wrapping, NaN if not measured yet, and the number
+	// of rows it wraps into, 0 if not laid out yet. Null while the text isn't wrapped.
+	private double[] widths;
+	private int[] rowCounts;
+	private int lineCount;
+
+	// The first row of every line, correct for the lines before validLines
+	private int[] firstRows;
+	private int validLines;
+
+	// The row starts of the last line asked for
+	private int cachedLine = -1;
+	private int[] cachedRowStarts;
+
+	public WrapIndex(EditorTextArea editor, LineIndex lineIndex) {
+		this.editor = editor;
+		this.lineIndex = lineIndex;
+		setFont(Font.getDefault());
+	}
+
+	public boolean isEnabled() {
+		return widths != null;
+	}
+
+	// Start or stop keeping track of the rows, nothing is laid out until it is asked for
+	public void setEnabled(boolean enabled) {
+		if (!enabled) {
+			widths = null;
+			rowCounts = null;
+			firstRows = null;
+		} else if (widths == null) {
+			lineCount = lineIndex.getLineCount();
+			widths = new double[Math.max(16, lineCount)];
+			rowCounts = new int[widths.length];
+			firstRows = new int[widths.length];
+			Arrays.fill(widths, Double.NaN);
+			validLines = 0;
+		}
+		cachedLine = -1;
+	}
+
+	public void setFont(Font font) {
+		measure.setFont(font);
+		measure.setWrappingWidth(0);
+		measure.setText("X");
+		lineHeight = measure.getLayoutBounds().getHeight();
+
+		// Every line has to be measured again
+		if (widths != null) {
+			Arrays.fill(widths, Double.NaN);
+			Arrays.fill(rowCounts, 0);
+			validLines = 0;
+		}
+		cachedLine = -1;
+	}
+
+	public void setWrappingWidth(double wrappingWidth) {
+		if (wrappingWidth == this.wrappingWidth) {
+			return;
+		}
+		this.wrappingWidth = wrappingWidth;
+
+		// Only the lines wider than the new width have to be laid out again
+		if (widths != null) {
+			for (int i = 0; i < lineCount; i++) {
+				rowCounts[i] = (widths[i] <= wrappingWidth) ? 1 : 0;
+			}
+			validLines = 0;
+		}
+		cachedLine = -1;
+	}
+
+	@Override
+	public void textChanged(int start, int end, String text) {
+		if (widths == null) {
+			return;
+		}
+
+		int insertedLines = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				insertedLines++;
+			}
+		}
+
+		// The line index is already up to date, the lines from the one holding the start
+		// of the change are replaced
+		int newLineCount = lineIndex.getLineCount();
+		int first = lineIndex.getLineOfOffset(start);
+		int removedLines = lineCount - newLineCount + insertedLines;
+		replaceLines(first, removedLines + 1, insertedLines + 1);
+	}
+
+	public int getRowCount() {
+		return getFirstRow(lineCount - 1) + getRowCount(lineCount - 1);
+	}
+
+	public int getRowOfOffset(int offset) {
+		int line = lineIndex.getLineOfOffset(offset);
+		int[] rowStarts = getRowStarts(line);
+		return getFirstRow(line) + findRow(rowStarts, offset - lineIndex.getLineStart(line));
+	}
+
+	public int getColumnOfOffset(int offset) {
+		int line = lineIndex.getLineOfOffset(offset);
+		int column = offset - lineIndex.getLineStart(line);
+		int[] rowStarts = getRowStarts(line);
+		return column - rowStarts[findRow(rowStarts, column)];
+	}
+
+	public int getRowStart(int row) {
+		getFirstRow(lineCount - 1);
+
+		// Find the last line starting at or before the row
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (firstRows[mid] <= row) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		int[] rowStarts = getRowStarts(low);
+		return lineIndex.getLineStart(low) + rowStarts[Math.min(row - firstRows[low], rowStarts.length - 1)];
+	}
+
+	private int findRow(int[] rowStarts, int column) {
+		int row = Arrays.binarySearch(rowStarts, column);
+		return (row >= 0) ? row : -row - 2;
+	}
+
+	private int getFirstRow(int line) {
+		if (validLines == 0) {
+			firstRows[0] = 0;
+			validLines = 1;
+		}
+		for (; validLines <= line; validLines++) {
+			firstRows[validLines] = firstRows[validLines - 1] + getRowCount(validLines - 1);
+		}
+		return firstRows[line];
+	}
+
+	private int getRowCount(int line) {
+		if (rowCounts[line] != 0) {
+			return rowCounts[line];
+		}
+
+		if (Double.isNaN(widths[line])) {
+			measure.setWrappingWidth(0);
+			measure.setText(getLineText(line));
+			widths[line] = measure.getLayoutBounds().getWidth();
+		}
+
+		if (widths[line] <= wrappingWidth) {
+			rowCounts[line] = 1;
+		} else {
+			measure.setText(getLineText(line));
+			measure.setWrappingWidth(wrappingWidth);
+			rowCounts[line] = Math.max(1, (int) Math.round(measure.getLayoutBounds().getHeight() / lineHeight));
+		}
+		return rowCounts[line];
+	}
+
+	// The offsets of the rows of the line, relative to the line start
+	private int[] getRowStarts(int line) {
+		if (line == cachedLine) {
+			return cachedRowStarts;
+		}
+
+		int rows = getRowCount(line);
+		int[] rowStarts = new int[rows];
+		if (rows > 1) {
+			measure.setText(getLineText(line));
+			measure.setWrappingWidth(wrappingWidth);
+			for (int row = 1; row < rows; row++) {
+				rowStarts[row] = measure.hitTest(new Point2D(0, (row + 0.5) * lineHeight)).getInsertionIndex();
+			}
+		}
+
+		cachedLine = line;
+		cachedRowStarts = rowStarts;
+		return rowStarts;
+	}
+
+	private String getLineText(int line) {
+		CharSequence document = editor.getDocument();
+		int start = lineIndex.getLineStart(line);
+		int end = (line + 1 < lineIndex.getLineCount()) ? lineIndex.getLineStart(line + 1) - 1 : document.length();
+		return document.subSequence(start, end).toString();
+	}
+
+	// Replace count lines at the given one with newCount lines which aren't laid out yet
+	private void replaceLines(int line, int count, int newCount) {
+		int newLineCount = lineCount - count + newCount;
+		if (newLineCount > widths.length) {
+			int capacity = Math.max(newLineCount, widths.length * 2);
+			widths = Arrays.copyOf(widths, capacity);
+			rowCounts = Arrays.copyOf(rowCounts, capacity);
+			firstRows = Arrays.copyOf(firstRows, capacity);
+		}
+
+		int tail = lineCount - line - count;
+		System.arraycopy(widths, line + count, widths, line + newCount, tail);
+		System.arraycopy(rowCounts, line + count, rowCounts, line + newCount, tail);
+		Arrays.fill(widths, line, line + newCount, Double.NaN);
+		Arrays.fill(rowCounts, line, line + newCount, 0);
+
+		lineCount = newLineCount;
+		validLines = Math.min(validLines, line);
+		cachedLine = -1;
+	}
+}
@@ -1,4 +1,5 @@
 module fxeditor.module {
 	requires javafx.controls;
+	requires static jdk.management;
 	exports fxeditor;
 }